@@ -0,0 +1,50 @@
+package org.digitNet.bench;
+
+import org.digitNet.server.Aggregator;
+import org.digitNet.server.StalenessPolicy;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The federated update: workers' params handed to the Aggregator and merged into the
+ * global CNN params. `updates` posts arrive together, so they share one merge.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AggregatorBenchmark {
+    @Param({"1", "8"})
+    public int updates;
+
+    private Aggregator aggregator;
+    private INDArray[] workerParams;
+    private CompletableFuture<?>[] pending;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        INDArray global = BenchData.model().params();
+        aggregator = new Aggregator(global, 0.5, new StalenessPolicy(-1, 0.5));
+        workerParams = new INDArray[updates];
+        for (int i = 0; i < updates; i++) {
+            workerParams[i] = global.add(Nd4j.randn(global.dataType(), global.shape()).muli(1e-3));
+        }
+        pending = new CompletableFuture<?>[updates];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        aggregator.close();
+    }
+
+    @Benchmark
+    public long merge() {
+        long base = aggregator.snapshot().version;
+        for (int i = 0; i < updates; i++) pending[i] = aggregator.post(workerParams[i], 600, base);
+        CompletableFuture.allOf(pending).join();
+        return aggregator.snapshot().version;
+    }
+}
@@ -0,0 +1,57 @@
+package org.digitNet.bench;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.digitNet.server.ParameterServer;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/** Synthetic MNIST-shaped IDX files and the production CNN, shared by the benchmarks. */
+final class BenchData {
+    static final int ROWS = 28, COLS = 28;
+
+    private BenchData() {}
+
+    /** Writes an images/labels pair with n random samples into dir; returns {images, labels}. */
+    static String[] writeIdx(File dir, int n) throws IOException {
+        File img = new File(dir, "bench-images-" + n + ".idx3-ubyte");
+        File lbl = new File(dir, "bench-labels-" + n + ".idx1-ubyte");
+        Random rng = new Random(42);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(img)))) {
+            out.writeInt(0x00000803);
+            out.writeInt(n);
+            out.writeInt(ROWS);
+            out.writeInt(COLS);
+            byte[] px = new byte[ROWS * COLS];
+            for (int i = 0; i < n; i++) {
+                rng.nextBytes(px);
+                out.write(px);
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(lbl)))) {
+            out.writeInt(0x00000801);
+            out.writeInt(n);
+            for (int i = 0; i < n; i++) out.writeByte(rng.nextInt(10));
+        }
+        img.deleteOnExit();
+        lbl.deleteOnExit();
+        return new String[] { img.getPath(), lbl.getPath() };
+    }
+
+    /** The CNN ParameterServer trains, initialized. */
+    static MultiLayerNetwork model() {
+        MultiLayerNetwork model = new MultiLayerNetwork(ParameterServer.buildConf(0.001));
+        model.init();
+        return model;
+    }
+
+    static File tempDir() throws IOException {
+        File dir = java.nio.file.Files.createTempDirectory("digitnet-bench").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+}
@@ -0,0 +1,68 @@
+package org.digitNet.bench;
+
+import org.digitNet.DataLoader;
+import org.digitNet.DataShard;
+import org.digitNet.IDXFileReader;
+import org.digitNet.IDXLabelReader;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** IDX parsing and shard loading on a synthetic MNIST-sized train set. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class IdxBenchmark {
+    @Param({"60000"})
+    public int images;
+
+    @Param({"100"})
+    public int numShards;
+
+    private String imgPath, lblPath;
+
+    @Setup(Level.Trial)
+    public void writeFiles() throws Exception {
+        File dir = BenchData.tempDir();
+        String[] paths = BenchData.writeIdx(dir, images);
+        imgPath = paths[0];
+        lblPath = paths[1];
+    }
+
+    // map + header parse, then normalize every image
+    @Benchmark
+    public INDArray parseImages() {
+        return new IDXFileReader(imgPath).getFeatures();
+    }
+
+    @Benchmark
+    public INDArray parseLabels() {
+        return new IDXLabelReader(lblPath).getLabels();
+    }
+
+    @Benchmark
+    public List<DataShard> loadShards() {
+        return DataLoader.loadShards(imgPath, lblPath, numShards);
+    }
+
+    // what a dispatch actually pays: materializing one shard's tensors
+    @Benchmark
+    public void materializeShard(ShardState s, Blackhole bh) {
+        bh.consume(s.shard.getFeatures());
+        bh.consume(s.shard.getLabels());
+    }
+
+    @State(Scope.Benchmark)
+    public static class ShardState {
+        DataShard shard;
+
+        @Setup(Level.Trial)
+        public void load(IdxBenchmark b) {
+            shard = DataLoader.loadShards(b.imgPath, b.lblPath, b.numShards).get(0);
+        }
+    }
+}
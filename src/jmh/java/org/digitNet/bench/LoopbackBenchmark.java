@@ -0,0 +1,81 @@
+package org.digitNet.bench;
+
+import org.digitNet.DataLoader;
+import org.digitNet.DataShard;
+import org.digitNet.TensorChannel;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One dispatch over a loopback socket, end to end: params + shard features + labels out,
+ * trained params back. The peer thread plays the worker (minus the training) and reads
+ * into pooled buffers like ShardReceiver does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LoopbackBenchmark {
+    @Param({"600"})
+    public int shardSize;
+
+    private INDArray params, features, labels;
+    private ServerSocketChannel listener;
+    private SocketChannel client;
+    private TensorChannel tensors;
+    private Thread worker;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        File dir = BenchData.tempDir();
+        String[] paths = BenchData.writeIdx(dir, shardSize);
+        DataShard shard = DataLoader.loadShards(paths[0], paths[1], 1).get(0);
+        features = shard.getFeatures();
+        labels   = shard.getLabels();
+        params   = BenchData.model().params().dup();
+
+        listener = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        client = SocketChannel.open(listener.getLocalAddress());
+        client.socket().setTcpNoDelay(true);
+        SocketChannel peer = listener.accept();
+        peer.socket().setTcpNoDelay(true);
+        tensors = new TensorChannel(client);
+
+        worker = new Thread(() -> {
+            TensorChannel in = new TensorChannel(peer);
+            try (peer) {
+                while (true) {
+                    INDArray p = in.readPooled();
+                    in.readPooled();
+                    in.readPooled();
+                    in.writeTensor(p); // "trained" params back
+                }
+            } catch (Exception e) {
+                // client closed at teardown
+            }
+        }, "loopback-worker");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        listener.close();
+        worker.join(1000);
+    }
+
+    @Benchmark
+    public INDArray shardRoundTrip() throws Exception {
+        tensors.writeTensor(params);
+        tensors.writeTensor(features);
+        tensors.writeTensor(labels);
+        return tensors.readPooled();
+    }
+}
@@ -0,0 +1,55 @@
+package org.digitNet.bench;
+
+import org.deeplearning4j.datasets.iterator.impl.ListDataSetIterator;
+import org.digitNet.DataLoader;
+import org.digitNet.DataShard;
+import org.digitNet.ShardBatchIterator;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One local epoch's worth of mini-batches over a received shard: the old
+ * asList() + ListDataSetIterator against ShardBatchIterator in order ("views") and
+ * shuffled ("shuffled"). The iterator is built once per trial like the worker builds
+ * it once per shard, so the numbers are the per-epoch cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MiniBatchBenchmark {
+    @Param({"600"})
+    public int shardSize;
+
+    @Param({"32"})
+    public int batchSize;
+
+    @Param({"list", "views", "shuffled"})
+    public String iterator;
+
+    private DataSetIterator iter;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        File dir = BenchData.tempDir();
+        String[] paths = BenchData.writeIdx(dir, shardSize);
+        DataShard shard = DataLoader.loadShards(paths[0], paths[1], 1).get(0);
+        DataSet data = new DataSet(shard.getFeatures(), shard.getLabels());
+        switch (iterator) {
+            case "list"  -> iter = new ListDataSetIterator<>(data.asList(), batchSize);
+            case "views" -> iter = new ShardBatchIterator(data, batchSize);
+            default      -> iter = new ShardBatchIterator(data, batchSize, new Random(123));
+        }
+    }
+
+    @Benchmark
+    public void epoch(Blackhole bh) {
+        iter.reset();
+        while (iter.hasNext()) bh.consume(iter.next());
+    }
+}
@@ -0,0 +1,37 @@
+package org.digitNet.bench;
+
+import org.digitNet.SerializationUtil;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** SerializationUtil round trips of the CNN's full parameter vector. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParamsSerializationBenchmark {
+    private INDArray params;
+    private byte[] bytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        params = BenchData.model().params().dup();
+        bytes  = SerializationUtil.toBytes(params);
+    }
+
+    @Benchmark
+    public byte[] toBytes() {
+        return SerializationUtil.toBytes(params);
+    }
+
+    @Benchmark
+    public INDArray fromBytes() {
+        return SerializationUtil.fromBytes(bytes);
+    }
+
+    @Benchmark
+    public INDArray roundTrip() {
+        return SerializationUtil.fromBytes(SerializationUtil.toBytes(params));
+    }
+}
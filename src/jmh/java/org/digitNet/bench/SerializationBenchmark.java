@@ -0,0 +1,46 @@
+package org.digitNet.bench;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.digitNet.codec.UpdateCodec;
+import org.digitNet.codec.UpdateCodecs;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every update codec on the CNN's full parameter vector, encoding a trained-looking
+ * update against the previous params (the encoded size is printed during setup).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SerializationBenchmark {
+    @Param({"full", "delta", "fp16", "int8", "topk:0.01"})
+    public String codecSpec;
+
+    private INDArray reference, updated;
+    private UpdateCodec codec;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        MultiLayerNetwork model = BenchData.model();
+        reference = model.params().dup();
+        updated   = reference.add(Nd4j.randn(reference.dataType(), reference.shape()).muli(1e-3));
+        codec     = UpdateCodecs.create(codecSpec, model, false);
+        encoded   = codec.encode(updated, reference);
+        System.out.printf("%s: %d params -> %d bytes%n", codecSpec, reference.length(), encoded.length);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(updated, reference);
+    }
+
+    @Benchmark
+    public INDArray decode() {
+        return codec.decode(encoded, reference);
+    }
+}
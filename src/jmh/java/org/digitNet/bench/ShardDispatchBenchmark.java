@@ -0,0 +1,94 @@
+package org.digitNet.bench;
+
+import org.digitNet.DataLoader;
+import org.digitNet.DataShard;
+import org.digitNet.IDXFileReader;
+import org.digitNet.IDXLabelReader;
+import org.digitNet.ShardStore;
+import org.digitNet.TensorChannel;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shard data (features + labels) sent over a loopback socket, either normalized from the
+ * mapped IDX files and written from the arrays ("idx") or transferred from a ShardStore
+ * ("store"). The peer reads both tensors and acks with a one-element tensor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ShardDispatchBenchmark {
+    @Param({"600"})
+    public int shardSize;
+
+    @Param({"idx", "store"})
+    public String source;
+
+    private DataShard shard;
+    private ShardStore store;
+    private ServerSocketChannel listener;
+    private SocketChannel client;
+    private TensorChannel tensors;
+    private Thread worker;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        File dir = BenchData.tempDir();
+        String[] paths = BenchData.writeIdx(dir, shardSize);
+        shard = DataLoader.loadShards(paths[0], paths[1], 1).get(0);
+        File storeFile = new File(dir, "bench-" + shardSize + ".store");
+        storeFile.deleteOnExit();
+        ShardStore.write(new IDXFileReader(paths[0]), new IDXLabelReader(paths[1]), storeFile.toPath());
+        store = ShardStore.open(storeFile.getPath());
+
+        listener = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        client = SocketChannel.open(listener.getLocalAddress());
+        client.socket().setTcpNoDelay(true);
+        SocketChannel peer = listener.accept();
+        peer.socket().setTcpNoDelay(true);
+        tensors = new TensorChannel(client);
+
+        worker = new Thread(() -> {
+            TensorChannel in = new TensorChannel(peer);
+            INDArray ack = Nd4j.zeros(1);
+            try (peer) {
+                while (true) {
+                    in.readPooled();
+                    in.readPooled();
+                    in.writeTensor(ack);
+                }
+            } catch (Exception e) {
+                // client closed at teardown
+            }
+        }, "dispatch-worker");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        listener.close();
+        worker.join(1000);
+        store.close();
+    }
+
+    @Benchmark
+    public INDArray sendShard() throws Exception {
+        if (source.equals("store")) {
+            store.send(shard, tensors);
+        } else {
+            tensors.writeTensor(shard.getFeatures());
+            tensors.writeTensor(shard.getLabels());
+        }
+        return tensors.readPooled();
+    }
+}
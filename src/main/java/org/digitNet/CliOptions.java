@@ -0,0 +1,59 @@
+package org.digitNet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits command-line args into positional values and optional "--name=value" flags
+ * (a bare "--name" means "true"), so mains can keep their positional usage and add
+ * tuning knobs without caring about order.
+ */
+public class CliOptions {
+    private final List<String> positional = new ArrayList<>();
+    private final Map<String, String> flags = new HashMap<>();
+
+    public CliOptions(String[] args) {
+        for (String a : args) {
+            if (a.startsWith("--")) {
+                int eq = a.indexOf('=');
+                if (eq < 0) flags.put(a.substring(2), "true");
+                else        flags.put(a.substring(2, eq), a.substring(eq + 1));
+            } else {
+                positional.add(a);
+            }
+        }
+    }
+
+    public int size() {
+        return positional.size();
+    }
+
+    public String get(int i) {
+        return positional.get(i);
+    }
+
+    public boolean has(String name) {
+        return flags.containsKey(name);
+    }
+
+    public String flag(String name, String def) {
+        return flags.getOrDefault(name, def);
+    }
+
+    public int intFlag(String name, int def) {
+        String v = flags.get(name);
+        return v == null ? def : Integer.parseInt(v);
+    }
+
+    public long longFlag(String name, long def) {
+        String v = flags.get(name);
+        return v == null ? def : Long.parseLong(v);
+    }
+
+    public double doubleFlag(String name, double def) {
+        String v = flags.get(name);
+        return v == null ? def : Double.parseDouble(v);
+    }
+}
@@ -3,20 +3,68 @@ package org.digitNet;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
 // HOLDER FOR CLIENT'S SLICE OF THE DATA
+// Only remembers the [start, end) range over the mapped dataset; arrays are built on request.
 public class DataShard {
-    private final INDArray features;
-    private final INDArray labels;
+    private final int id;
+    private final IDXFileReader images;
+    private final IDXLabelReader labels;
+    private final int start, end;
 
-    public DataShard(INDArray features, INDArray labels) {
-        this.features = features;
-        this.labels   = labels;
+    public DataShard(int id, IDXFileReader images, IDXLabelReader labels, int start, int end) {
+        this.id     = id;
+        this.images = images;
+        this.labels = labels;
+        this.start  = start;
+        this.end    = end;
+    }
+
+    /** Stable identifier, the same every time this shard is dispatched. */
+    public int getId() {
+        return id;
+    }
+
+    /** First sample of this shard in the mapped files. */
+    public int getStart() {
+        return start;
+    }
+
+    /** One past the last sample of this shard in the mapped files. */
+    public int getEnd() {
+        return end;
+    }
+
+    /** Feature columns per sample (pixels per image). */
+    public int numFeatures() {
+        return images.getImageSize();
+    }
+
+    public int numSamples() {
+        return end - start;
     }
 
     public INDArray getFeatures() {
-        return features;
+        return images.getFeatures(start, end);
     }
 
     public INDArray getLabels() {
-        return labels;
+        return labels.getLabels(start, end);
+    }
+
+    /** Samples [from, to) of this shard as a shard of its own, sharing the mapped data. */
+    public DataShard slice(int newId, int from, int to) {
+        if (from < 0 || to > numSamples() || from > to) {
+            throw new IndexOutOfBoundsException("[" + from + ", " + to + ") of " + numSamples());
+        }
+        return new DataShard(newId, images, labels, start + from, start + to);
+    }
+
+    /** Normalized features of samples [from, to) relative to this shard. */
+    public INDArray getFeatures(int from, int to) {
+        return images.getFeatures(start + from, start + to);
+    }
+
+    /** One-hot labels of samples [from, to) relative to this shard. */
+    public INDArray getLabels(int from, int to) {
+        return labels.getLabels(start + from, start + to);
     }
 }
@@ -1,18 +1,24 @@
 package org.digitNet;
 
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
 public class IDXFileReader {
 
-    private INDArray features; // ND4j Array that holds all the images and each row represents one image, flattened to 1d
+    private static final int MAGIC = 0x00000803; // 2051 for images
+
+    private ByteBuffer pixels; // Memory-mapped raw uint8 pixels, image i starts at i * imageSize
+    private int numImages, numRows, numCols;
 
     /**
-     * THIS PARSES THROUGH THE IDX FILE AND STORES THE IMAGES INTO THE IND ARRAY
+     * THIS MAPS THE IDX FILE INTO MEMORY AND KEEPS THE PIXELS AS RAW UNSIGNED BYTES.
+     * Normalization to 0.0 - 1.0 only happens when a range of images is requested.
      * @param fileName Name of the IDX File
      */
     public IDXFileReader(String fileName){
@@ -23,30 +29,29 @@ public class IDXFileReader {
             return;
         }
 
-        try(DataInputStream dis = new DataInputStream(new FileInputStream(file))){
-            //READ IDX HEADER INFORMATION
-            int magicNumber = dis.readInt(); // Should be 2051 for images
-            int numImages = dis.readInt();
-            int numRows = dis.readInt();
-            int numCols = dis.readInt();
+        try(FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+
+            //READ IDX HEADER INFORMATION (big-endian, same as the mapped buffer's default order)
+            int magicNumber = buf.getInt();
+            numImages = buf.getInt();
+            numRows = buf.getInt();
+            numCols = buf.getInt();
 
             System.out.println("Magic Number: " + magicNumber);
             System.out.println("Number of Images: " + numImages);
             System.out.println("Image Dimensions: " + numRows + " x " + numCols);
+            if (magicNumber != MAGIC) {
+                System.err.println("Invalid IDX image file (magic: " + magicNumber + ")");
+            }
 
-            int imageSize = numRows * numCols;
-            features = Nd4j.create(numImages, imageSize);
-
-            byte[] buffer = new byte[imageSize];
-            for(int i = 0; i < numImages; i++){
-                dis.readFully(buffer);
-
-                double[] pixels = new double[imageSize];
-                for(int j = 0; j < imageSize; j++){
-                    pixels[j] = (buffer[j] & 0xFF) / 255.0; // CONVERT THE UNSIGNED BYTE TO DOUBLE (0.0 - 1.0)
-                }
-                features.putRow(i,Nd4j.create(pixels)); // PLACE NORMALIZED PIXEL VALUES INTO features INDArray
+            long expected = (long) numImages * getImageSize();
+            if (buf.remaining() < expected) {
+                throw new IOException("truncated file: expected " + expected
+                        + " pixel bytes, found " + buf.remaining());
             }
+            pixels = buf.slice().asReadOnlyBuffer();
 
         }catch(IOException e){
             System.err.println("ERROR: PARSING THROUGH FILE " + e.getMessage());
@@ -54,11 +59,41 @@ public class IDXFileReader {
 
     }
 
+    public int getNumImages() {
+        return numImages;
+    }
+
+    public int getImageSize() {
+        return numRows * numCols;
+    }
+
+    /**
+     * Normalized pixels (0.0 - 1.0) for images [from, to), one row per image.
+     * Only this range is expanded to floats, so callers can work one mini-batch at a time.
+     * @return INDArray of shape [to - from, rows * cols]
+     */
+    public INDArray getFeatures(int from, int to) {
+        int imageSize = getImageSize();
+        int n = to - from;
+        float[] out = new float[n * imageSize];
+        int base = from * imageSize;
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (pixels.get(base + i) & 0xFF) / 255.0f; // CONVERT THE UNSIGNED BYTE TO FLOAT (0.0 - 1.0)
+        }
+        return Nd4j.create(out, new long[]{n, imageSize}, 'c');
+    }
+
+    /** Copies image i's raw uint8 pixels into dst (length rows * cols). */
+    public void copyPixels(int i, byte[] dst) {
+        pixels.get(i * getImageSize(), dst, 0, getImageSize());
+    }
+
     /**
-     * GETTER FOR THE IND ARRAY CONTAINING ALL THE IMAGES
+     * GETTER FOR THE IND ARRAY CONTAINING ALL THE IMAGES (normalized on every call)
      * @return INDArray
      */
     public INDArray getFeatures() {
-        return features;
+        if (pixels == null) return null;
+        return getFeatures(0, numImages);
     }
 }
@@ -1,12 +1,19 @@
 package org.digitNet;
 
 import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
 
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
 public class IDXLabelReader {
-    private INDArray labels; // shape: [numLabels, 10] one-hot
+    public static final int NUM_CLASSES = 10;
+    public static final List<String> CLASS_NAMES = List.of("0", "1", "2", "3", "4", "5", "6", "7", "8", "9");
+
+    private byte[] classes; // one class index (0–9) per label
 
     public IDXLabelReader(String fileName) {
         File f = new File(fileName);
@@ -15,26 +22,53 @@ public class IDXLabelReader {
             return;
         }
 
-        try(DataInputStream dis = new DataInputStream(new FileInputStream(f))) {
-            int magic = dis.readInt();
+        try(FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            int magic = buf.getInt();
             if (magic != 0x00000801) {
-                System.err.println("Invalid IDX label file (magic: " + magic + ")");
+                throw new IllegalArgumentException("Invalid IDX label file " + fileName + " (magic: " + magic + ")");
             }
 
-            int numLabels = dis.readInt();
-            // Create one-hot labels: shape [numLabels, 10]
-            labels = Nd4j.zeros(numLabels, 10);
-
+            int numLabels = buf.getInt();
+            classes = new byte[numLabels];
+            buf.get(classes);
+            // checked once here, so the bytes can index one-hot rows directly later on
             for (int i = 0; i < numLabels; i++) {
-                int lbl = dis.readUnsignedByte();         // 0–9
-                labels.putScalar(i, lbl, 1.0);            // set one-hot
+                int c = classes[i] & 0xFF;
+                if (c >= NUM_CLASSES) {
+                    throw new IllegalArgumentException("Label " + i + " of " + fileName + " is " + c
+                            + ", not a class in 0.." + (NUM_CLASSES - 1));
+                }
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    public int getNumLabels() {
+        return classes.length;
+    }
+
+    /** Class indices, each in 0..NUM_CLASSES-1; callers must not modify the returned array. */
+    public byte[] getClassIndices() {
+        return classes;
+    }
+
+    /**
+     * One-hot labels for [from, to), expanded on demand.
+     * @return INDArray of shape [to - from, 10]
+     */
+    public INDArray getLabels(int from, int to) {
+        int n = to - from;
+        float[] out = new float[n * NUM_CLASSES];
+        for (int i = 0; i < n; i++) {
+            out[i * NUM_CLASSES + classes[from + i]] = 1.0f; // set one-hot
+        }
+        return Nd4j.create(out, new long[]{n, NUM_CLASSES}, 'c');
+    }
+
     public INDArray getLabels() {
-        return labels;
+        if (classes == null) return null;
+        return getLabels(0, classes.length);
     }
 }
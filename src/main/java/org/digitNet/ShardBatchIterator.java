@@ -0,0 +1,219 @@
+package org.digitNet;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.Shape;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Mini-batches straight out of a shard's features/labels arrays, for epoch after epoch
+ * over the same shard without per-example DataSets or re-concatenation.
+ *
+ * In order, batch i is a pair of row-range views built once up front, so an epoch
+ * allocates nothing. Shuffled, an index permutation is reshuffled in place on every
+ * reset() and each batch is gathered into the same two reused buffers, so a batch is
+ * only valid until the next call to next(). Either way batches alias memory the iterator
+ * owns or shares, which is why there is no async prefetch. A preprocessor works on a copy
+ * of an in-order batch (in place it would rewrite the shard), so it costs an allocation
+ * per batch; gathered batches are fresh copies already and are preprocessed in place.
+ *
+ * next(num) serves odd-sized requests: row views in order, a gather into new arrays
+ * shuffled.
+ */
+public class ShardBatchIterator implements DataSetIterator {
+    private static final long serialVersionUID = 1L;
+
+    private final INDArray features, labels;
+    private final int numSamples, batchSize;
+    private final DataSet[] views;  // in order: batch i as views, built once
+    private final Random rng;       // null: in order
+    private final int[] order;      // shuffled: sample permutation
+    private final DataSet buffer, lastBuffer; // shuffled: full batches, and the short last one
+    private final transient Rows x, y, lastX, lastY; // shuffled: byte-level row copies into those
+    private DataSetPreProcessor preProcessor;
+    private int pos; // first row of the next batch
+
+    /** In order. */
+    public ShardBatchIterator(DataSet data, int batchSize) {
+        this(data, batchSize, null);
+    }
+
+    /** @param rng reshuffles the samples on every reset(); null keeps them in order */
+    public ShardBatchIterator(DataSet data, int batchSize, Random rng) {
+        // gathering copies rows as plain byte ranges, which needs c-order without gaps
+        this.features = rng != null ? compact(data.getFeatures()) : data.getFeatures();
+        this.labels = rng != null ? compact(data.getLabels()) : data.getLabels();
+        this.numSamples = (int) features.size(0);
+        this.batchSize = Math.min(batchSize, Math.max(1, numSamples));
+        this.rng = rng;
+        int batches = (numSamples + this.batchSize - 1) / this.batchSize;
+        int last = numSamples - (batches - 1) * this.batchSize;
+        if (rng == null) {
+            views = new DataSet[batches];
+            for (int b = 0; b < batches; b++) {
+                int from = b * this.batchSize, to = Math.min(from + this.batchSize, numSamples);
+                views[b] = new DataSet(
+                        features.get(NDArrayIndex.interval(from, to), NDArrayIndex.all()),
+                        labels.get(NDArrayIndex.interval(from, to), NDArrayIndex.all()));
+            }
+            order = null;
+            buffer = lastBuffer = null;
+            x = y = lastX = lastY = null;
+        } else {
+            views = null;
+            order = new int[numSamples];
+            for (int i = 0; i < numSamples; i++) order[i] = i;
+            buffer = gatherBuffer(this.batchSize);
+            lastBuffer = last == this.batchSize ? buffer : gatherBuffer(last);
+            x = new Rows(features, buffer.getFeatures());
+            y = new Rows(labels, buffer.getLabels());
+            lastX = new Rows(features, lastBuffer.getFeatures());
+            lastY = new Rows(labels, lastBuffer.getLabels());
+            shuffle();
+        }
+    }
+
+    // copies whole rows from a source matrix into a batch buffer through their NIO views;
+    // absolute bulk puts, so no allocation and no native op per batch
+    private static final class Rows {
+        final ByteBuffer src, dst;
+        final int srcBase, dstBase, rowBytes;
+
+        Rows(INDArray from, INDArray to) {
+            int elem = from.data().getElementSize();
+            this.src = from.data().asNio();
+            this.dst = to.data().asNio();
+            this.srcBase = (int) (from.offset() * elem);
+            this.dstBase = (int) (to.offset() * elem);
+            this.rowBytes = (int) (from.size(1) * elem);
+        }
+
+        void gather(int[] order, int from, int to) {
+            for (int i = from; i < to; i++) {
+                dst.put(dstBase + (i - from) * rowBytes, src, srcBase + order[i] * rowBytes, rowBytes);
+            }
+        }
+    }
+
+    private static INDArray compact(INDArray arr) {
+        return arr.ordering() == 'c' && Shape.hasDefaultStridesForShape(arr) ? arr : arr.dup('c');
+    }
+
+    private DataSet gatherBuffer(int rows) {
+        return new DataSet(
+                Nd4j.createUninitialized(features.dataType(), new long[]{rows, features.size(1)}, 'c'),
+                Nd4j.createUninitialized(labels.dataType(), new long[]{rows, labels.size(1)}, 'c'));
+    }
+
+    // Fisher–Yates over the permutation, in place
+    private void shuffle() {
+        for (int i = numSamples - 1; i > 0; i--) {
+            int j = rng.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return pos < numSamples;
+    }
+
+    @Override
+    public DataSet next() {
+        int from = pos, to = Math.min(from + batchSize, numSamples);
+        if (from % batchSize != 0) return next(batchSize); // knocked off the grid by next(num)
+        pos = to;
+        if (rng == null) {
+            DataSet view = views[from / batchSize];
+            return preProcessor != null ? preProcessed(view.copy()) : view;
+        }
+        boolean full = to - from == batchSize;
+        (full ? x : lastX).gather(order, from, to);
+        (full ? y : lastY).gather(order, from, to);
+        return preProcessed(full ? buffer : lastBuffer);
+    }
+
+    @Override
+    public DataSet next(int num) {
+        int from = pos, to = Math.min(from + num, numSamples);
+        pos = to;
+        if (rng == null) {
+            DataSet view = new DataSet(
+                    features.get(NDArrayIndex.interval(from, to), NDArrayIndex.all()),
+                    labels.get(NDArrayIndex.interval(from, to), NDArrayIndex.all()));
+            return preProcessor != null ? preProcessed(view.copy()) : view;
+        }
+        int[] rows = Arrays.copyOfRange(order, from, to);
+        return preProcessed(new DataSet(features.getRows(rows), labels.getRows(rows)));
+    }
+
+    private DataSet preProcessed(DataSet batch) {
+        if (preProcessor != null) preProcessor.preProcess(batch);
+        return batch;
+    }
+
+    @Override
+    public int inputColumns() {
+        return (int) features.size(1);
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return (int) labels.size(1);
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    // a prefetching wrapper would read ahead into the buffers we're about to reuse
+    @Override
+    public boolean asyncSupported() {
+        return false;
+    }
+
+    @Override
+    public void reset() {
+        pos = 0;
+        if (rng != null) shuffle();
+    }
+
+    @Override
+    public int batch() {
+        return batchSize;
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return IDXLabelReader.CLASS_NAMES;
+    }
+
+    // batches alias the shard and reused buffers; there is nothing worth writing out
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        throw new NotSerializableException(getClass().getName());
+    }
+}
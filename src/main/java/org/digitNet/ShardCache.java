@@ -0,0 +1,60 @@
+package org.digitNet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU map of shard id -> value, bounded by a byte budget.
+ *
+ * The worker keeps the actual shard data in here. The server keeps a mirror per
+ * connection holding only the sizes, so it knows when the worker already has a
+ * shard. The mirror stays exact as long as both sides call get/put in the same
+ * order with the same byte counts.
+ */
+public class ShardCache<V> {
+    private static final class Entry<V> {
+        final V value;
+        final long bytes;
+        Entry(V value, long bytes) { this.value = value; this.bytes = bytes; }
+    }
+
+    private final long budgetBytes;
+    private long usedBytes;
+    private final LinkedHashMap<Integer, Entry<V>> entries =
+            new LinkedHashMap<>(16, 0.75f, true); // access order = LRU first
+
+    public ShardCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    // Returns the cached value and marks it most recently used, or null on a miss
+    public synchronized V get(int id) {
+        Entry<V> e = entries.get(id);
+        return e == null ? null : e.value;
+    }
+
+    // Inserts a value, evicting least recently used entries until it fits.
+    // Values larger than the whole budget are not cached at all.
+    public synchronized void put(int id, V value, long bytes) {
+        Entry<V> old = entries.remove(id);
+        if (old != null) usedBytes -= old.bytes;
+        if (bytes > budgetBytes) return;
+
+        Iterator<Map.Entry<Integer, Entry<V>>> it = entries.entrySet().iterator();
+        while (usedBytes + bytes > budgetBytes && it.hasNext()) {
+            usedBytes -= it.next().getValue().bytes;
+            it.remove();
+        }
+        entries.put(id, new Entry<>(value, bytes));
+        usedBytes += bytes;
+    }
+
+    public synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,179 @@
+package org.digitNet;
+
+import org.nd4j.linalg.api.buffer.DataType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The train set preprocessed once into exactly the bytes the server puts on the wire:
+ * normalized float32 pixels and one-hot float32 labels, row-major, native byte order.
+ *
+ * Layout: a 4 KiB index page, then the features section, then the labels section.
+ *   index: int magic, int format, byte byteOrder, byte dtype, int numSamples,
+ *          int imageSize, int numClasses, long featuresOffset, long labelsOffset
+ *
+ * Any shard is a contiguous row range of both sections, so send() can write the tensor
+ * headers and transferTo the rows straight from the page cache to the worker's socket,
+ * whatever the sharding (fixed or carved on demand). Build one with
+ *
+ *   java org.digitNet.ShardStore trainImages trainLabels out.store
+ */
+public class ShardStore implements AutoCloseable {
+    private static final int MAGIC = 0x444E5353; // "DNSS"
+    private static final int FORMAT = 1;
+    private static final int INDEX_BYTES = 4096;
+    private static final DataType TYPE = DataType.FLOAT;
+    private static final byte NATIVE_ORDER =
+            (byte) (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 0);
+
+    private final FileChannel file;
+    private final int numSamples, imageSize, numClasses;
+    private final long featuresOffset, labelsOffset;
+
+    private ShardStore(FileChannel file, int numSamples, int imageSize, int numClasses,
+                       long featuresOffset, long labelsOffset) {
+        this.file = file;
+        this.numSamples = numSamples;
+        this.imageSize = imageSize;
+        this.numClasses = numClasses;
+        this.featuresOffset = featuresOffset;
+        this.labelsOffset = labelsOffset;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: ShardStore <trainImages> <trainLabels> <storeFile>");
+            System.exit(1);
+        }
+        long t0 = System.nanoTime();
+        write(new IDXFileReader(args[0]), new IDXLabelReader(args[1]), Paths.get(args[2]));
+        System.out.printf("Wrote %s (%d MB) in %.1f s%n", args[2],
+                Files.size(Paths.get(args[2])) >> 20, (System.nanoTime() - t0) / 1e9);
+    }
+
+    /** Converts the IDX pair into a store at out (via a temp file, so out is never half written). */
+    public static void write(IDXFileReader images, IDXLabelReader labels, Path out) throws IOException {
+        int n = images.getNumImages();
+        if (labels.getNumLabels() != n) {
+            throw new IllegalArgumentException("Image/label count mismatch: " + n + " vs " + labels.getNumLabels());
+        }
+        int imageSize = images.getImageSize();
+        int numClasses = IDXLabelReader.NUM_CLASSES;
+        long featuresOffset = INDEX_BYTES;
+        long labelsOffset = featuresOffset + (long) n * imageSize * TYPE.width();
+
+        Path tmp = out.resolveSibling(out.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer index = ByteBuffer.allocate(INDEX_BYTES);
+            index.putInt(MAGIC).putInt(FORMAT).put(NATIVE_ORDER).put((byte) TYPE.ordinal())
+                    .putInt(n).putInt(imageSize).putInt(numClasses)
+                    .putLong(featuresOffset).putLong(labelsOffset);
+            index.clear();
+            writeFully(ch, index, 0);
+
+            // same arithmetic as IDXFileReader.getFeatures / IDXLabelReader.getLabels
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.nativeOrder());
+            byte[] pixels = new byte[imageSize];
+            long pos = featuresOffset;
+            for (int i = 0; i < n; i++) {
+                if (buf.remaining() < imageSize * 4) pos += flush(ch, buf, pos);
+                images.copyPixels(i, pixels);
+                for (byte p : pixels) buf.putFloat((p & 0xFF) / 255.0f);
+            }
+            pos += flush(ch, buf, pos);
+            byte[] classes = labels.getClassIndices();
+            for (int i = 0; i < n; i++) {
+                if (buf.remaining() < numClasses * 4) pos += flush(ch, buf, pos);
+                for (int c = 0; c < numClasses; c++) buf.putFloat(c == classes[i] ? 1.0f : 0.0f);
+            }
+            flush(ch, buf, pos);
+            ch.force(true);
+        }
+        Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Maps the index page and keeps the file open for transfers. */
+    public static ShardStore open(String path) throws IOException {
+        FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        try {
+            MappedByteBuffer index = ch.map(FileChannel.MapMode.READ_ONLY, 0, INDEX_BYTES);
+            if (index.getInt() != MAGIC) throw new IOException(path + " is not a shard store");
+            int format = index.getInt();
+            if (format != FORMAT) throw new IOException("Unsupported shard store format " + format);
+            if (index.get() != NATIVE_ORDER) throw new IOException(path + " was written with the other byte order");
+            if (index.get() != (byte) TYPE.ordinal()) throw new IOException(path + " holds another dtype");
+            int n = index.getInt(), imageSize = index.getInt(), numClasses = index.getInt();
+            long featuresOffset = index.getLong(), labelsOffset = index.getLong();
+            long expected = labelsOffset + (long) n * numClasses * TYPE.width();
+            if (ch.size() < expected) {
+                throw new IOException("truncated shard store: expected " + expected + " bytes, found " + ch.size());
+            }
+            return new ShardStore(ch, n, imageSize, numClasses, featuresOffset, labelsOffset);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    public int getNumSamples() {
+        return numSamples;
+    }
+
+    /** Features per sample (pixels per image). */
+    public int getImageSize() {
+        return imageSize;
+    }
+
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    /**
+     * Sends the shard's features and labels as two tensors, exactly as
+     * tensors.writeTensor(shard.getFeatures()) and (shard.getLabels()) would.
+     * @return payload bytes written
+     */
+    public long send(DataShard shard, TensorChannel tensors) throws IOException {
+        return send(shard, 0, shard.numSamples(), tensors);
+    }
+
+    /** Like send(shard, tensors), for the shard's samples [from, to) only. */
+    public long send(DataShard shard, int from, int to, TensorChannel tensors) throws IOException {
+        if (shard.getEnd() > numSamples) {
+            throw new IOException("shard " + shard.getId() + " ends at " + shard.getEnd() + ", store has " + numSamples);
+        }
+        int first = shard.getStart() + from, rows = to - from;
+        long x = tensors.transferTensor(file, featuresOffset + (long) first * imageSize * TYPE.width(),
+                TYPE, rows, imageSize);
+        long y = tensors.transferTensor(file, labelsOffset + (long) first * numClasses * TYPE.width(),
+                TYPE, rows, numClasses);
+        return x + y;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private static long flush(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        buf.flip();
+        long n = buf.remaining();
+        writeFully(ch, buf, pos);
+        buf.clear();
+        return n;
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) pos += ch.write(buf, pos);
+    }
+}
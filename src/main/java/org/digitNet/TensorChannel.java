@@ -0,0 +1,223 @@
+package org.digitNet;
+
+import org.digitNet.metrics.Metrics;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.Shape;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Moves INDArrays over a blocking SocketChannel without going through heap byte[]s.
+ *
+ * The sender writes a small header followed by the array's own off-heap buffer; the
+ * receiver reads the payload straight into the off-heap buffer of the destination array.
+ * Header: [byte order][byte dtype][byte rank][long shape...][long payloadBytes]
+ *
+ * Control ints can still be written through the socket's streams in between, as long
+ * as those streams are unbuffered (DataInput/OutputStream over socket streams are).
+ *
+ * Payloads that already sit in a file in wire layout (see ShardStore) can be sent with
+ * transferTensor, which hands them from the page cache to the socket without copying
+ * them through the JVM.
+ */
+public class TensorChannel {
+    private static final int MAX_RANK = 8;
+    private static final byte NATIVE_ORDER =
+            (byte) (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 0);
+
+    private final SocketChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocateDirect(3 + 8 * MAX_RANK + 8);
+    private final long[][] shapes = new long[MAX_RANK + 1][];         // reused per rank
+    private final Map<String, INDArray> pool = new HashMap<>();      // readPooled targets
+
+    public TensorChannel(SocketChannel channel) {
+        this.channel = channel;
+        for (int r = 0; r <= MAX_RANK; r++) shapes[r] = new long[r];
+    }
+
+    /** Payload size of an array on the wire (header excluded). */
+    public static long sizeOf(INDArray arr) {
+        return arr.length() * arr.data().getElementSize();
+    }
+
+    /**
+     * Writes header + payload. Arrays that are not one contiguous c-order block
+     * are compacted first, everything else goes out from its own buffer.
+     * @return payload bytes written
+     */
+    public long writeTensor(INDArray arr) throws IOException {
+        ByteBuffer data = region(arr);
+        if (data == null) {
+            arr = arr.dup('c');
+            data = region(arr);
+        }
+        long bytes = sizeOf(arr);
+        putHeader(arr.dataType(), arr.shape(), bytes);
+        long t0 = System.nanoTime();
+        Metrics.BYTES_OUT.addAndGet(header.remaining() + bytes);
+        writeFully(header);
+        writeFully(data);
+        Metrics.SEND.record(System.nanoTime() - t0);
+        return bytes;
+    }
+
+    /**
+     * Writes a header for a c-order tensor of the given dtype and shape, then its payload
+     * straight out of file starting at position (which must hold it in native byte order).
+     * @return payload bytes written
+     */
+    public long transferTensor(FileChannel file, long position, DataType type, long... shape) throws IOException {
+        long bytes = type.width();
+        for (long d : shape) bytes *= d;
+        putHeader(type, shape, bytes);
+        long t0 = System.nanoTime();
+        Metrics.BYTES_OUT.addAndGet(header.remaining() + bytes);
+        writeFully(header);
+        for (long sent = 0; sent < bytes; ) {
+            long n = file.transferTo(position + sent, bytes - sent, channel);
+            if (n <= 0 && position + sent >= file.size()) throw new EOFException("file ends mid-tensor");
+            sent += n;
+        }
+        Metrics.SEND.record(System.nanoTime() - t0);
+        return bytes;
+    }
+
+    /**
+     * Writes plain bytes (e.g. an encoded broadcast) straight to the channel. Better than
+     * DataOutputStream.write for anything large on a virtual thread: that one is synchronized,
+     * so while the socket is backed up it pins the carrier thread and stalls other handlers.
+     */
+    public void writeBytes(byte[] raw) throws IOException {
+        writeFully(ByteBuffer.wrap(raw));
+    }
+
+    /** A tensor header on its own, for peers that move the payload bytes themselves. */
+    public record Header(DataType type, long[] shape, long payloadBytes) {}
+
+    /**
+     * Writes just a header; the caller must write exactly payloadBytes straight after it
+     * (e.g. the cluster simulator's fake workers, which send canned bytes at a paced rate).
+     */
+    public void writeHeaderOnly(Header h) throws IOException {
+        putHeader(h.type(), h.shape(), h.payloadBytes());
+        writeFully(header);
+    }
+
+    /** Reads just the next header; the caller must consume its payload off the socket itself. */
+    public Header readHeaderOnly() throws IOException {
+        DataType type = readHeader();
+        int rank = header.get(2);
+        return new Header(type, shapes[rank].clone(), header.getLong(3 + 8 * rank));
+    }
+
+    private void putHeader(DataType type, long[] shape, long bytes) throws IOException {
+        if (shape.length > MAX_RANK) throw new IOException("rank " + shape.length + " > " + MAX_RANK);
+        header.clear();
+        header.put(NATIVE_ORDER).put((byte) type.ordinal()).put((byte) shape.length);
+        for (long d : shape) header.putLong(d);
+        header.putLong(bytes);
+        header.flip();
+    }
+
+    /** Reads the next tensor into a newly allocated (off-heap) array. */
+    public INDArray readTensor() throws IOException {
+        DataType type = readHeader();
+        INDArray arr = Nd4j.createUninitialized(type, shapes[header.get(2)].clone(), 'c');
+        readPayload(arr);
+        return arr;
+    }
+
+    /**
+     * Reads the next tensor into an array owned by this channel and reused for every
+     * message with the same dtype and shape. Only valid until the next readPooled call.
+     */
+    public INDArray readPooled() throws IOException {
+        DataType type = readHeader();
+        return readPooledPayload(type, shapes[header.get(2)]);
+    }
+
+    /** Reads the next tensor directly into target, which must match its dtype and shape. */
+    public void readTensorInto(INDArray target) throws IOException {
+        DataType type = readHeader();
+        long[] shape = shapes[header.get(2)];
+        if (type != target.dataType() || !Arrays.equals(shape, target.shape())) {
+            throw new IOException("tensor mismatch: got " + type + Arrays.toString(shape)
+                    + ", expected " + target.dataType() + Arrays.toString(target.shape()));
+        }
+        if (region(target) == null) {
+            INDArray tmp = readPooledPayload(type, shape);
+            target.assign(tmp);
+            return;
+        }
+        readPayload(target);
+    }
+
+    // reads the header and fills shapes[rank]; leaves rank at header.get(2)
+    private DataType readHeader() throws IOException {
+        header.clear().limit(3);
+        readFully(header);
+        if (header.get(0) != NATIVE_ORDER) throw new IOException("peer byte order differs");
+        DataType type = DataType.values()[header.get(1)]; // same jar on both ends
+        int rank = header.get(2);
+        if (rank < 0 || rank > MAX_RANK) throw new IOException("bad tensor rank " + rank);
+
+        header.limit(3 + 8 * rank + 8);
+        readFully(header);
+        long[] shape = shapes[rank];
+        for (int i = 0; i < rank; i++) shape[i] = header.getLong(3 + 8 * i);
+        return type;
+    }
+
+    private INDArray readPooledPayload(DataType type, long[] shape) throws IOException {
+        String key = type + Arrays.toString(shape);
+        INDArray arr = pool.get(key);
+        if (arr == null) {
+            arr = Nd4j.createUninitialized(type, shape.clone(), 'c');
+            pool.put(key, arr);
+        }
+        readPayload(arr);
+        return arr;
+    }
+
+    private void readPayload(INDArray arr) throws IOException {
+        int rank = header.get(2);
+        long bytes = header.getLong(3 + 8 * rank);
+        if (bytes != sizeOf(arr)) throw new IOException("payload " + bytes + " != " + sizeOf(arr));
+        long t0 = System.nanoTime(); // from the header's arrival, so idle waiting isn't counted
+        readFully(region(arr));
+        Metrics.RECEIVE.record(System.nanoTime() - t0);
+        Metrics.BYTES_IN.addAndGet(3 + 8 * rank + 8 + bytes);
+    }
+
+    // the array's elements as one slice of its off-heap buffer, or null if they aren't
+    // a single c-order block (contiguous views such as a range of a row vector qualify;
+    // ND4J marks rank-1 views 'f', which is the same layout)
+    private static ByteBuffer region(INDArray arr) {
+        if ((arr.ordering() != 'c' && arr.rank() > 1) || !Shape.hasDefaultStridesForShape(arr)) return null;
+        int elem  = arr.data().getElementSize();
+        int start = (int) (arr.offset() * elem);
+        ByteBuffer buf = arr.data().asNio();
+        buf.limit(start + (int) sizeOf(arr)).position(start);
+        return buf;
+    }
+
+    private void writeFully(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) channel.write(buf);
+    }
+
+    private void readFully(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf) < 0) throw new EOFException("peer closed mid-tensor");
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package org.digitNet.client;
+
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.digitNet.CliOptions;
+import org.digitNet.ShardCache;
+import org.digitNet.TensorChannel;
+import org.digitNet.codec.UpdateCodec;
+import org.digitNet.codec.UpdateCodecs;
+import org.digitNet.metrics.Metrics;
+import org.digitNet.server.MessageType;
+import org.digitNet.server.PartitionTable;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Edge aggregator: a single upstream connection for a group of local workers (a rack).
+ *
+ * Upstream it is an ordinary worker that reports the group's summed capacity. Downstream
+ * it speaks ClientHandler's protocol, so unmodified WorkerClients connect to it. Every
+ * shard from the server is split across the group in proportion to each worker's
+ * capacity, and the trained params come back. They are averaged by sample count,
+ * Σ (n_i / n)·θ_i, and sent upstream as one update for the shard. The server sees one
+ * connection and one update per shard for the whole group.
+ *
+ * Parts are numbered against the group as it was at startup, so a part's shard id
+ * always names the same rows and local workers can serve repeats from their caches.
+ * If a worker drops out, its parts go to the others.
+ */
+public class EdgeAggregator {
+
+    // one local worker connection
+    private static final class LocalWorker {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+        final TensorChannel tensors;
+        final int capacity;
+        final ShardCache<Boolean> cache; // mirror of the worker's LRU (sizes only)
+        long version = -1;               // model version of the params it holds
+        boolean alive = true;
+
+        LocalWorker(Socket socket, DataInputStream in, DataOutputStream out, int capacity, long cacheBudget) {
+            this.socket = socket;
+            this.in = in;
+            this.out = out;
+            this.tensors = new TensorChannel(socket.getChannel());
+            this.capacity = capacity;
+            this.cache = new ShardCache<>(cacheBudget);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        CliOptions opts = new CliOptions(args);
+        if (opts.size() < 4 || opts.size() > 6) {
+            System.err.println("Usage: EdgeAggregator <listenPort> <numWorkers> <serverHost> <serverPort>" +
+                    " [shardCacheMB] [codec] [--metrics-port=N]");
+            System.err.println("  numWorkers: local workers to wait for before joining the server");
+            System.err.println("  codec: for the updates sent upstream (default full); local workers always use full");
+            System.exit(1);
+        }
+        int    listenPort = Integer.parseInt(opts.get(0));
+        int    numWorkers = Integer.parseInt(opts.get(1));
+        String host       = opts.get(2);
+        int    port       = Integer.parseInt(opts.get(3));
+        long   cacheMB    = opts.size() > 4 ? Long.parseLong(opts.get(4)) : 256;
+        String codecSpec  = opts.size() > 5 ? opts.get(5) : "full";
+        Metrics.expose(opts.intFlag("metrics-port", 0));
+
+        try (ServerSocketChannel listener = ServerSocketChannel.open()) {
+            listener.bind(new InetSocketAddress(listenPort));
+            long backoffMs = 1000;
+            while (!runSession(listener, numWorkers, host, port, cacheMB, codecSpec)) {
+                System.out.printf("Server busy; retrying in %d ms%n", backoffMs);
+                Thread.sleep(backoffMs);
+                backoffMs = Math.min(backoffMs * 2, 30_000);
+            }
+        }
+        Metrics.stop();
+    }
+
+    // One upstream connection's lifetime. Returns false if the server was at capacity.
+    private static boolean runSession(ServerSocketChannel listener, int numWorkers, String host, int port,
+                                      long cacheMB, String codecSpec) throws Exception {
+        try (SocketChannel ch = SocketChannel.open(new InetSocketAddress(host, port));
+             Socket sock = ch.socket();
+             DataOutputStream out = new DataOutputStream(sock.getOutputStream());
+             DataInputStream  in  = new DataInputStream(sock.getInputStream()))
+        {
+            sock.setTcpNoDelay(true);
+            int status = in.readInt();
+            if (status == MessageType.SERVER_BUSY.code) return false;
+            if (status != MessageType.ACCEPTED.code) {
+                throw new RuntimeException("Unexpected code: " + status);
+            }
+
+            // upstream handshake, first half: model and hyperparams, passed on to the group
+            byte[] confJson = new byte[in.readInt()];
+            in.readFully(confJson);
+            MultiLayerNetwork model = new MultiLayerNetwork(
+                    MultiLayerConfiguration.fromJson(new String(confJson, StandardCharsets.UTF_8)));
+            model.init();
+            int localEpochs = in.readInt();
+            int batchSize   = in.readInt();
+
+            List<LocalWorker> group = acceptGroup(listener, numWorkers, confJson, localEpochs, batchSize);
+            int capacity = 0;
+            for (LocalWorker w : group) capacity += w.capacity;
+            Metrics.gauge("edge.workers", () -> group.stream().filter(w -> w.alive).count());
+
+            // upstream handshake, second half: we cache, prefetch and report the group's capacity
+            ShardCache<DataSet> cache = new ShardCache<>(cacheMB * 1024 * 1024);
+            out.writeLong(cacheMB * 1024 * 1024);
+            out.writeUTF(codecSpec);
+            out.writeInt(1);
+            out.writeInt(capacity);
+            out.writeBoolean(false); // whole shards: we split them by rows
+            out.flush();
+            UpdateCodec codec = UpdateCodecs.create(in.readUTF(), model, true);
+            if (!PartitionTable.read(in).isEmpty()) {
+                throw new IllegalStateException("edge aggregators need the params held by the server, not partitions");
+            }
+            System.out.printf("Joined %s:%d for %d workers (capacity %d), codec %s%n",
+                    host, port, group.size(), capacity, codec.spec());
+
+            TensorChannel tensorsOut = new TensorChannel(ch);
+            ShardReceiver receiver = new ShardReceiver(in, new TensorChannel(ch), codec, cache,
+                    true, model.params(), 1, batchSize);
+            Thread rx = new Thread(receiver, "shard-receiver");
+            rx.setDaemon(true);
+            rx.start();
+
+            INDArray avg = Nd4j.createUninitialized(model.params().dataType(), model.params().shape(), 'c');
+            while (true) {
+                ShardReceiver.Assignment job = receiver.take();
+                if (job == null) break;
+
+                long t0 = System.nanoTime();
+                trainOnGroup(group, job, avg);
+                Metrics.FIT.record(System.nanoTime() - t0);
+
+                if (codec.sendsRawTensor()) {
+                    tensorsOut.writeTensor(avg);
+                } else {
+                    long t1 = System.nanoTime();
+                    byte[] upd = codec.encode(avg, job.params);
+                    long t2 = System.nanoTime();
+                    out.writeInt(upd.length);
+                    out.write(upd);
+                    Metrics.SERIALIZE.record(t2 - t1);
+                    Metrics.SEND.record(System.nanoTime() - t2);
+                    Metrics.BYTES_OUT.addAndGet(4 + upd.length);
+                }
+                out.flush();
+                System.out.printf("Shard %d: %d samples averaged over the group in %.1f s (trained from v%d)%n",
+                        job.shardId, job.data.numExamples(), (System.nanoTime() - t0) / 1e9, job.version);
+            }
+
+            System.out.println("No more shards; releasing the group.");
+            for (LocalWorker w : group) {
+                if (!w.alive) continue;
+                try (w.socket) {
+                    w.out.writeInt(MessageType.NO_MORE_SHARDS.code);
+                    w.out.flush();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return true;
+    }
+
+    // waits for numWorkers local workers and runs ClientHandler's handshake with each
+    private static List<LocalWorker> acceptGroup(ServerSocketChannel listener, int numWorkers, byte[] confJson,
+                                                 int localEpochs, int batchSize) throws IOException {
+        List<LocalWorker> group = new ArrayList<>(numWorkers);
+        System.out.printf("Waiting for %d local workers on %s%n", numWorkers, listener.getLocalAddress());
+        while (group.size() < numWorkers) {
+            Socket s = listener.accept().socket();
+            s.setTcpNoDelay(true);
+            DataOutputStream out = new DataOutputStream(s.getOutputStream());
+            DataInputStream  in  = new DataInputStream(s.getInputStream());
+            out.writeInt(MessageType.ACCEPTED.code);
+            out.writeInt(confJson.length);
+            out.write(confJson);
+            out.writeInt(localEpochs);
+            out.writeInt(batchSize);
+            out.flush();
+            long cacheBudget = in.readLong();
+            in.readUTF();  // requested codec: the rack link carries raw tensors
+            in.readInt();  // prefetch: we hand out one part at a time
+            int capacity = Math.max(1, in.readInt());
+            in.readBoolean(); // stream: parts go out whole
+            out.writeUTF("full");
+            PartitionTable.none().write(out);
+            out.flush();
+            group.add(new LocalWorker(s, in, out, capacity, cacheBudget));
+            System.out.printf("Local worker %s joined (%d/%d, capacity %d)%n",
+                    s.getRemoteSocketAddress(), group.size(), numWorkers, capacity);
+        }
+        return group;
+    }
+
+    // trains the shard's parts on the group and leaves their sample-weighted average in avg
+    private static void trainOnGroup(List<LocalWorker> group, ShardReceiver.Assignment job, INDArray avg)
+            throws Exception {
+        int n = job.data.numExamples();
+        int parts = group.size();
+        int totalCapacity = 0;
+        for (LocalWorker w : group) totalCapacity += w.capacity;
+        int[] bounds = new int[parts + 1];
+        for (int i = 0, cum = 0; i < parts; i++) {
+            cum += group.get(i).capacity;
+            bounds[i + 1] = (int) ((long) n * cum / totalCapacity);
+        }
+
+        // each part goes to its own worker, or round-robin to the live ones if that one is gone
+        List<List<Integer>> todo = new ArrayList<>();
+        for (int i = 0; i < parts; i++) todo.add(new ArrayList<>());
+        List<Integer> pending = new ArrayList<>();
+        for (int p = 0; p < parts; p++) if (bounds[p + 1] > bounds[p]) pending.add(p);
+
+        avg.assign(0);
+        ReentrantLock accLock = new ReentrantLock(); // guards avg and failed
+        while (!pending.isEmpty()) {
+            List<Integer> live = new ArrayList<>();
+            for (int i = 0; i < parts; i++) if (group.get(i).alive) live.add(i);
+            if (live.isEmpty()) throw new IOException("every local worker has dropped out");
+            int rr = 0;
+            for (int p : pending) {
+                int w = group.get(p).alive ? p : live.get(rr++ % live.size());
+                todo.get(w).add(p);
+            }
+            pending.clear();
+
+            List<Thread> threads = new ArrayList<>();
+            List<Integer> failed = new ArrayList<>();
+            for (int w : live) {
+                if (todo.get(w).isEmpty()) continue;
+                LocalWorker worker = group.get(w);
+                List<Integer> mine = new ArrayList<>(todo.get(w));
+                todo.get(w).clear();
+                threads.add(Thread.ofVirtual().start(() -> {
+                    for (int i = 0; i < mine.size(); i++) {
+                        int p = mine.get(i);
+                        try {
+                            INDArray trained = trainPart(worker, job, job.shardId * parts + p,
+                                    bounds[p], bounds[p + 1]);
+                            double weight = (double) (bounds[p + 1] - bounds[p]) / n;
+                            accLock.lock();
+                            try {
+                                Nd4j.getBlasWrapper().level1().axpy(avg.length(), weight, trained, avg);
+                            } finally {
+                                accLock.unlock();
+                            }
+                        } catch (Exception e) {
+                            System.err.printf("Local worker %s failed: %s%n", worker.socket.getRemoteSocketAddress(), e);
+                            worker.alive = false;
+                            try {
+                                worker.socket.close();
+                            } catch (IOException ignored) {
+                            }
+                            accLock.lock();
+                            try {
+                                failed.addAll(mine.subList(i, mine.size()));
+                            } finally {
+                                accLock.unlock();
+                            }
+                            return;
+                        }
+                    }
+                }));
+            }
+            for (Thread t : threads) t.join();
+            pending.addAll(failed);
+        }
+    }
+
+    // one part as a SHARD_DATA / SHARD_CACHED dispatch; returns the worker's trained params
+    // (a pooled buffer, valid until this worker's next part)
+    private static INDArray trainPart(LocalWorker w, ShardReceiver.Assignment job, int partId, int from, int to)
+            throws IOException {
+        boolean cached = w.cache.get(partId) != null;
+        boolean sendParams = w.version != job.version;
+        w.out.writeInt(cached ? MessageType.SHARD_CACHED.code : MessageType.SHARD_DATA.code);
+        w.out.writeInt(partId);
+        w.out.writeLong(job.version);
+        w.out.writeBoolean(sendParams);
+        if (sendParams) w.tensors.writeTensor(job.params);
+        if (!cached) {
+            long bytes = w.tensors.writeTensor(job.data.getFeatures().get(NDArrayIndex.interval(from, to), NDArrayIndex.all()))
+                    + w.tensors.writeTensor(job.data.getLabels().get(NDArrayIndex.interval(from, to), NDArrayIndex.all()));
+            w.cache.put(partId, Boolean.TRUE, bytes);
+        }
+        w.out.flush();
+        w.version = job.version;
+        return w.tensors.readPooled();
+    }
+}
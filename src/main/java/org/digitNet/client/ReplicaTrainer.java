@@ -0,0 +1,117 @@
+package org.digitNet.client;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.digitNet.ShardBatchIterator;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Trains one shard on several model replicas at once and leaves their sample-weighted
+ * average in the main model, so a many-core worker still sends a single update.
+ *
+ * Every replica starts from the main model's params and gets a contiguous 1/N of the
+ * shard; afterwards the main model holds Σ (n_i / n)·θ_i, the same FedAvg rule the
+ * server applies across workers. Replica 0 is the main model itself. Each replica
+ * keeps its own updater state between shards, like a single model would.
+ *
+ * Batches are views of (or, shuffled, gathers into reused buffers from) the shard arrays,
+ * and fit runs in the model's workspaces, so epochs after the first allocate next to nothing.
+ */
+final class ReplicaTrainer implements AutoCloseable {
+    private final MultiLayerNetwork model;
+    private final List<MultiLayerNetwork> replicas = new ArrayList<>();
+    private final ExecutorService pool;
+    private final Random seeds; // null: batches in order; else seeds each fit's shuffling
+
+    ReplicaTrainer(MultiLayerNetwork model, int numReplicas, boolean shuffle) {
+        this.model = model;
+        this.seeds = shuffle ? new Random(123) : null;
+        replicas.add(model);
+        for (int i = 1; i < numReplicas; i++) replicas.add(model.clone());
+        this.pool = numReplicas > 1 ? Executors.newFixedThreadPool(numReplicas - 1, r -> {
+            Thread t = new Thread(r, "replica-trainer");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+    }
+
+    int size() {
+        return replicas.size();
+    }
+
+    /**
+     * localEpochs passes over data, starting from the model's current params.
+     * @return mean loss of the replicas after the last epoch
+     */
+    double fit(DataSet data, int batchSize, int localEpochs) throws Exception {
+        int n = data.numExamples();
+        int parts = Math.min(replicas.size(), Math.max(1, n / batchSize)); // at least a batch each
+        if (parts == 1) return fit(model, data, batchSize, localEpochs, rng());
+
+        INDArray start = model.params();
+        List<Future<Double>> results = new ArrayList<>(parts - 1);
+        int[] bounds = new int[parts + 1];
+        for (int i = 0; i <= parts; i++) bounds[i] = (int) ((long) n * i / parts);
+        for (int i = 1; i < parts; i++) {
+            MultiLayerNetwork replica = replicas.get(i);
+            replica.setParams(start);
+            DataSet part = rows(data, bounds[i], bounds[i + 1]);
+            Random rng = rng();
+            results.add(pool.submit(() -> fit(replica, part, batchSize, localEpochs, rng)));
+        }
+        double loss = fit(model, rows(data, bounds[0], bounds[1]), batchSize, localEpochs, rng());
+        for (Future<Double> f : results) loss += f.get();
+
+        // θ ← Σ (n_i / n)·θ_i, accumulated in place on replica 0 (the model)
+        INDArray avg = model.params();
+        avg.muli((double) (bounds[1] - bounds[0]) / n);
+        for (int i = 1; i < parts; i++) {
+            double w = (double) (bounds[i + 1] - bounds[i]) / n;
+            Nd4j.getBlasWrapper().level1().axpy(avg.length(), w, replicas.get(i).params(), avg);
+        }
+        return loss / parts;
+    }
+
+    /** localEpochs passes over batches on the model alone (no replicas), e.g. a shard still streaming in. */
+    double fit(DataSetIterator batches, int localEpochs) {
+        for (int e = 1; e <= localEpochs; e++) {
+            batches.reset();
+            model.fit(batches);
+        }
+        return model.score();
+    }
+
+    private Random rng() {
+        return seeds != null ? new Random(seeds.nextLong()) : null;
+    }
+
+    private static double fit(MultiLayerNetwork m, DataSet data, int batchSize, int localEpochs, Random rng) {
+        var iter = new ShardBatchIterator(data, batchSize, rng);
+        for (int e = 1; e <= localEpochs; e++) {
+            iter.reset();
+            m.fit(iter);
+        }
+        return m.score();
+    }
+
+    private static DataSet rows(DataSet data, int from, int to) {
+        return new DataSet(
+                data.getFeatures().get(NDArrayIndex.interval(from, to), NDArrayIndex.all()),
+                data.getLabels().get(NDArrayIndex.interval(from, to), NDArrayIndex.all()));
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) pool.shutdownNow();
+    }
+}
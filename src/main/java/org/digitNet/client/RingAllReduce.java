@@ -0,0 +1,93 @@
+package org.digitNet.client;
+
+import org.digitNet.TensorChannel;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Chunked ring all-reduce over TCP: every rank ends up with the element-wise sum of
+ * everybody's vector.
+ *
+ * The vector is cut into `size` chunks. In size-1 reduce-scatter steps each rank passes
+ * one chunk to its successor while adding the one arriving from its predecessor, after
+ * which every rank owns the full sum of one chunk; size-1 all-gather steps then pass the
+ * finished chunks around. Each rank sends and receives 2·(size-1)/size of the vector in
+ * total, no matter how many ranks there are.
+ */
+final class RingAllReduce implements AutoCloseable {
+    private final int rank, size;
+    private final SocketChannel next, prev;
+    private final TensorChannel toNext, fromPrev;
+    // sends one chunk while the caller receives the next; it only writes buffer bytes to the channel
+    private final ExecutorService sender = Executors.newVirtualThreadPerTaskExecutor();
+
+    private RingAllReduce(int rank, int size, SocketChannel next, SocketChannel prev) {
+        this.rank = rank;
+        this.size = size;
+        this.next = next;
+        this.prev = prev;
+        this.toNext = next != null ? new TensorChannel(next) : null;
+        this.fromPrev = prev != null ? new TensorChannel(prev) : null;
+    }
+
+    /**
+     * Connects to the successor at nextHost:nextPort and takes the predecessor's connection
+     * on listener. Every rank is listening before any of them is told its neighbours, so
+     * connecting first can't deadlock.
+     */
+    static RingAllReduce join(ServerSocketChannel listener, int rank, int size,
+                              String nextHost, int nextPort) throws IOException {
+        if (size == 1) return new RingAllReduce(rank, size, null, null);
+        SocketChannel next = SocketChannel.open(new InetSocketAddress(nextHost, nextPort));
+        next.socket().setTcpNoDelay(true);
+        SocketChannel prev = listener.accept();
+        prev.socket().setTcpNoDelay(true);
+        return new RingAllReduce(rank, size, next, prev);
+    }
+
+    /** Replaces vec (a [1, n] c-order row vector) with the sum of all ranks' vecs, in place. */
+    void allReduce(INDArray vec) throws Exception {
+        if (size == 1) return;
+        long len = vec.length();
+        INDArray flat = vec.reshape(len); // rank-1 views of it are plain buffer ranges, sent without a copy
+        // reduce-scatter: after step s we hold the partial sum of chunk (rank - s - 1) over s + 2 ranks
+        for (int s = 0; s < size - 1; s++) {
+            INDArray out = chunk(flat, len, rank - s);
+            INDArray in  = chunk(flat, len, rank - s - 1);
+            Future<Long> sent = sender.submit(() -> toNext.writeTensor(out));
+            in.addi(fromPrev.readPooled());
+            sent.get();
+        }
+        // all-gather: chunk (rank + 1) is complete here; pass finished chunks along
+        for (int s = 0; s < size - 1; s++) {
+            INDArray out = chunk(flat, len, rank + 1 - s);
+            INDArray in  = chunk(flat, len, rank - s);
+            Future<Long> sent = sender.submit(() -> toNext.writeTensor(out));
+            fromPrev.readTensorInto(in);
+            sent.get();
+        }
+    }
+
+    // chunk c (mod size) of flat as a view; the last chunk takes the remainder
+    private INDArray chunk(INDArray flat, long len, int c) {
+        c = Math.floorMod(c, size);
+        long per = len / size;
+        long from = c * per, to = c == size - 1 ? len : from + per;
+        return flat.get(NDArrayIndex.interval(from, to));
+    }
+
+    @Override
+    public void close() throws IOException {
+        sender.shutdownNow();
+        if (next != null) next.close();
+        if (prev != null) prev.close();
+    }
+}
@@ -0,0 +1,164 @@
+package org.digitNet.client;
+
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.optimize.listeners.ScoreIterationListener;
+import org.digitNet.CliOptions;
+import org.digitNet.ShardCache;
+import org.digitNet.TensorChannel;
+import org.digitNet.metrics.Metrics;
+import org.digitNet.server.MessageType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Worker for ring mode (ParameterServer --ring=N): trains the shard the coordinator hands
+ * it each step, then averages with the other ranks through a ring all-reduce instead of
+ * sending params to the server.
+ *
+ * Every rank starts a step from the same params θ, so after summing (n_i·θ_i, n_i) over the
+ * ring each one applies the server's FedAvg rule θ ← (1 - lr)·θ + lr·Σ n_i·θ_i / Σ n_i
+ * locally and they stay identical. It listens for its ring predecessor on an ephemeral
+ * port, so any number of them can run on one host.
+ */
+public class RingWorker {
+    public static void main(String[] args) throws Exception {
+        CliOptions opts = new CliOptions(args);
+        if (opts.size() < 2 || opts.size() > 3) {
+            System.err.println("Usage: RingWorker <coordinatorHost> <coordinatorPort> [shardCacheMB] [--replicas=N] [--shuffle] [--metrics-port=N]");
+            System.err.println("  replicas: model replicas training each shard in parallel, averaged locally (default 1, 0: one per core)");
+            System.err.println("  shuffle: reshuffle each shard's samples every local epoch (default: in order)");
+            System.err.println("  metrics-port: serve metrics at http://127.0.0.1:N/metrics (default off)");
+            System.exit(1);
+        }
+        String host    = opts.get(0);
+        int    port    = Integer.parseInt(opts.get(1));
+        long   cacheMB = opts.size() > 2 ? Long.parseLong(opts.get(2)) : 256;
+        int    replicas = opts.intFlag("replicas", 1);
+        if (replicas <= 0) replicas = Runtime.getRuntime().availableProcessors();
+        boolean shuffle  = opts.has("shuffle");
+        Metrics.expose(opts.intFlag("metrics-port", 0));
+
+        // bound before we join, so our predecessor can connect as soon as ranks are out
+        try (ServerSocketChannel listener = ServerSocketChannel.open().bind(new InetSocketAddress(0));
+             SocketChannel ch = SocketChannel.open(new InetSocketAddress(host, port));
+             Socket sock = ch.socket();
+             DataOutputStream out = new DataOutputStream(sock.getOutputStream());
+             DataInputStream  in  = new DataInputStream(sock.getInputStream()))
+        {
+            sock.setTcpNoDelay(true);
+            int status = in.readInt();
+            if (status != MessageType.ACCEPTED.code) {
+                throw new RuntimeException("Unexpected code: " + status);
+            }
+            TensorChannel tensors = new TensorChannel(ch);
+
+            // handshake: model JSON + hyperparams, as with the parameter server
+            byte[] cBuf = new byte[in.readInt()];
+            in.readFully(cBuf);
+            MultiLayerConfiguration conf =
+                    MultiLayerConfiguration.fromJson(new String(cBuf, StandardCharsets.UTF_8));
+            MultiLayerNetwork model = new MultiLayerNetwork(conf);
+            model.init();
+            int localEpochs = in.readInt();
+            int batchSize   = in.readInt();
+
+            // handshake: cache budget + the port our predecessor should connect to
+            ShardCache<DataSet> cache = new ShardCache<>(cacheMB * 1024 * 1024);
+            out.writeLong(cacheMB * 1024 * 1024);
+            int listenPort = ((InetSocketAddress) listener.getLocalAddress()).getPort();
+            out.writeInt(listenPort);
+            out.flush();
+            System.out.printf("Handshake received: localEpochs=%d, batchSize=%d; ring port %d%n",
+                    localEpochs, batchSize, listenPort);
+
+            // rank assignment + initial params; blocks until the whole ring has joined
+            int code = in.readInt();
+            if (code != MessageType.RING_ASSIGN.code) throw new IllegalStateException("Unexpected code: " + code);
+            int rank = in.readInt(), size = in.readInt();
+            double lr = in.readDouble();
+            String nextHost = in.readUTF();
+            int nextPort = in.readInt();
+            INDArray global = tensors.readTensor();
+            System.out.printf("Rank %d of %d; next rank at %s:%d%n", rank, size, nextHost, nextPort);
+
+            model.setListeners(new ScoreIterationListener(10));
+            ReplicaTrainer trainer = new ReplicaTrainer(model, replicas, shuffle);
+            long numParams = global.length();
+            // [n·θ | n]: the sample count rides along so one all-reduce gives both sums
+            INDArray vec = Nd4j.create(global.dataType(), 1, numParams + 1);
+            INDArray weighted = vec.get(NDArrayIndex.all(), NDArrayIndex.interval(0, numParams));
+
+            try (RingAllReduce ring = RingAllReduce.join(listener, rank, size, nextHost, nextPort)) {
+                while (true) {
+                    code = in.readInt();
+                    if (code == MessageType.NO_MORE_SHARDS.code) {
+                        if (rank == 0) tensors.writeTensor(global);
+                        System.out.println("No more shards; exiting.");
+                        break;
+                    }
+                    if (code != MessageType.RING_STEP.code) throw new IllegalStateException("Unexpected code: " + code);
+                    int step = in.readInt();
+                    int shardId = in.readInt();
+                    boolean dataFollows = in.readBoolean();
+
+                    DataSet data = null;
+                    if (dataFollows) {
+                        INDArray X = tensors.readTensor();
+                        INDArray Y = tensors.readTensor();
+                        data = new DataSet(X, Y);
+                        cache.put(shardId, data, TensorChannel.sizeOf(X) + TensorChannel.sizeOf(Y));
+                    } else if (shardId >= 0) {
+                        data = cache.get(shardId);
+                        if (data == null) throw new IllegalStateException("No data for cached shard " + shardId);
+                    }
+
+                    // local training from the common params; an idle rank contributes nothing
+                    int samples = 0;
+                    double loss = 0;
+                    long t0 = System.nanoTime();
+                    if (data != null) {
+                        model.setParams(global);
+                        loss = trainer.fit(data, batchSize, localEpochs);
+                        samples = data.numExamples();
+                        weighted.assign(model.params()).muli(samples);
+                    } else {
+                        weighted.assign(0);
+                    }
+                    vec.putScalar(0, numParams, samples);
+                    long t1 = System.nanoTime();
+                    Metrics.FIT.record(t1 - t0);
+
+                    ring.allReduce(vec);
+                    double total = vec.getDouble(0, numParams);
+                    if (total > 0) {
+                        global.muli(1.0 - lr).addi(weighted.muli(lr / total));
+                    }
+                    Metrics.AGGREGATE.record(System.nanoTime() - t1);
+                    if (data != null) {
+                        System.out.printf("  step %d, shard %d: trained in %.1f s, all-reduce %.2f s, loss=%.4f%n",
+                                step, shardId, (t1 - t0) / 1e9, (System.nanoTime() - t1) / 1e9, loss);
+                    }
+
+                    out.writeInt(MessageType.RING_DONE.code);
+                    out.writeInt(step);
+                    out.writeInt(samples);
+                    out.writeDouble(loss);
+                    out.flush();
+                }
+            }
+            trainer.close();
+        }
+        Metrics.stop();
+    }
+}
@@ -0,0 +1,202 @@
+package org.digitNet.client;
+
+import org.digitNet.ShardCache;
+import org.digitNet.TensorChannel;
+import org.digitNet.codec.UpdateCodec;
+import org.digitNet.metrics.Metrics;
+import org.digitNet.server.MessageType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.DataInputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Background reader for the worker. Decodes SHARD_DATA / SHARD_CACHED messages as soon
+ * as they arrive, so the next shard is already local when training of the current one
+ * finishes. The server keeps at most 1 + prefetch shards outstanding per worker, which
+ * bounds how far ahead this gets.
+ *
+ * A SHARD_STREAM is handed out as soon as its header is in, with a StreamingShardIterator
+ * that this thread keeps filling while the shard trains.
+ *
+ * In partition mode the coordinator's COMMIT_REPLY arrives on the same stream, so this
+ * thread reads those too and hands them to awaitCommit().
+ */
+class ShardReceiver implements Runnable {
+
+    /** One dispatched shard: its data and the params to start training from. */
+    static final class Assignment {
+        final int shardId;
+        final DataSet data;                    // null while the shard is streaming in
+        final StreamingShardIterator stream;   // null unless it was sent as SHARD_STREAM
+        final INDArray params; // null when params come from partition servers
+        final long version;    // model version of params
+
+        Assignment(int shardId, DataSet data, StreamingShardIterator stream, INDArray params, long version) {
+            this.shardId = shardId;
+            this.data    = data;
+            this.stream  = stream;
+            this.params  = params;
+            this.version = version;
+        }
+
+        int numSamples() {
+            return stream != null ? stream.numSamples() : data.numExamples();
+        }
+    }
+
+    private final DataInputStream in;
+    private final TensorChannel tensors;   // read side only
+    private final UpdateCodec codec;
+    private final ShardCache<DataSet> cache;
+    private final boolean paramsInMessage;
+    private final int batchSize;           // rows per SHARD_STREAM chunk
+    private StreamingShardIterator streaming; // shard being streamed in, if any
+    private final INDArray[] paramRing;    // raw-codec receive buffers, one per outstanding shard
+    private int ringPos;
+    private INDArray received;             // last decoded broadcast, reference for the next delta
+    private INDArray current;              // params of the last broadcast, reused while the model hasn't moved
+
+    // Assignment, END or the Throwable that stopped the reader
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private static final Object END = new Object();
+    // COMMIT_REPLY answers (Boolean) or the Throwable that stopped the reader
+    private final BlockingQueue<Object> commits = new LinkedBlockingQueue<>();
+
+    ShardReceiver(DataInputStream in, TensorChannel tensors, UpdateCodec codec,
+                  ShardCache<DataSet> cache, boolean paramsInMessage,
+                  INDArray paramTemplate, int prefetch, int batchSize) {
+        this.in = in;
+        this.tensors = tensors;
+        this.codec = codec;
+        this.cache = cache;
+        this.paramsInMessage = paramsInMessage;
+        this.batchSize = batchSize;
+        // a buffer is free again once its shard's update was sent, i.e. before the
+        // server may dispatch (1 + prefetch) shards later
+        this.paramRing = new INDArray[prefetch + 1];
+        if (paramsInMessage && codec.sendsRawTensor()) {
+            for (int i = 0; i < paramRing.length; i++) {
+                paramRing[i] = Nd4j.createUninitialized(paramTemplate.dataType(), paramTemplate.shape(), 'c');
+            }
+        }
+    }
+
+    /** Shards received but not yet taken for training. */
+    int queued() {
+        return queue.size();
+    }
+
+    /** Next shard to train on, or null once the server has no more. */
+    Assignment take() throws Exception {
+        Object o = queue.take();
+        if (o == END) {
+            queue.put(END); // stay terminated for repeated calls
+            return null;
+        }
+        if (o instanceof Throwable t) throw new Exception("shard receiver failed", t);
+        return (Assignment) o;
+    }
+
+    /** The coordinator's answer to our PARTITIONS_COMMIT: true if this copy of the shard won. */
+    boolean awaitCommit() throws Exception {
+        Object o = commits.take();
+        if (o instanceof Throwable t) throw new Exception("shard receiver failed", t);
+        return (Boolean) o;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                int code = in.readInt();
+                if (code == MessageType.NO_MORE_SHARDS.code) {
+                    queue.put(END);
+                    return;
+                }
+                if (code == MessageType.COMMIT_REPLY.code) {
+                    commits.put(in.readBoolean());
+                    continue;
+                }
+                if (code != MessageType.SHARD_DATA.code
+                        && code != MessageType.SHARD_CACHED.code
+                        && code != MessageType.SHARD_STREAM.code) {
+                    throw new IllegalStateException("Unexpected code: " + code);
+                }
+                int shardId = in.readInt();
+                // the server skips the params when we already hold its current version;
+                // the ring slot holding them isn't reused until a later broadcast lands
+                // (1 + prefetch) broadcasts on, by which time this shard has been trained
+                long version = in.readLong();
+                if (in.readBoolean()) current = readParams();
+                INDArray params = paramsInMessage ? current : null;
+
+                if (code == MessageType.SHARD_STREAM.code) {
+                    // train while the rest arrives
+                    StreamingShardIterator stream = new StreamingShardIterator(
+                            in.readInt(), in.readInt(), in.readInt(), batchSize);
+                    queue.put(new Assignment(shardId, null, stream, params, version));
+                    streaming = stream;
+                    long bytes = receive(stream);
+                    streaming = null;
+                    cache.put(shardId, stream.full(), bytes);
+                    continue;
+                }
+
+                DataSet data;
+                if (code == MessageType.SHARD_CACHED.code) {
+                    data = cache.get(shardId);
+                    if (data == null) {
+                        throw new IllegalStateException("Server sent SHARD_CACHED for unknown shard " + shardId);
+                    }
+                } else {
+                    // receive features and labels into fresh arrays (they may stay cached)
+                    INDArray X = tensors.readTensor();
+                    INDArray Y = tensors.readTensor();
+                    data = new DataSet(X, Y);
+                    cache.put(shardId, data, TensorChannel.sizeOf(X) + TensorChannel.sizeOf(Y));
+                }
+                queue.put(new Assignment(shardId, data, null, params, version));
+            }
+        } catch (Throwable t) {
+            if (streaming != null) streaming.fail(t);
+            queue.offer(t);
+            commits.offer(t);
+        }
+    }
+
+    // the chunks of a SHARD_STREAM: features then labels of each batchSize rows, in order
+    private long receive(StreamingShardIterator stream) throws Exception {
+        long bytes = 0;
+        for (int i = 0; i < stream.chunks(); i++) {
+            DataSet chunk = stream.chunk(i);
+            tensors.readTensorInto(chunk.getFeatures());
+            tensors.readTensorInto(chunk.getLabels());
+            bytes += TensorChannel.sizeOf(chunk.getFeatures()) + TensorChannel.sizeOf(chunk.getLabels());
+            stream.arrived(stream.chunkEnd(i));
+        }
+        return bytes;
+    }
+
+    private INDArray readParams() throws Exception {
+        if (codec.sendsRawTensor()) {
+            INDArray buf = paramRing[ringPos];
+            ringPos = (ringPos + 1) % paramRing.length;
+            tensors.readTensorInto(buf);
+            return buf;
+        }
+        int pLen = in.readInt();
+        byte[] pBuf = new byte[pLen];
+        long t0 = System.nanoTime();
+        in.readFully(pBuf);
+        long t1 = System.nanoTime();
+        received = codec.decode(pBuf, received);
+        Metrics.RECEIVE.record(t1 - t0);
+        Metrics.DESERIALIZE.record(System.nanoTime() - t1);
+        Metrics.BYTES_IN.addAndGet(4 + pLen);
+        return received;
+    }
+}
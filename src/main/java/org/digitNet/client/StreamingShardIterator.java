@@ -0,0 +1,200 @@
+package org.digitNet.client;
+
+import org.digitNet.IDXLabelReader;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Mini-batches of a shard that is still arriving (SHARD_STREAM). The ShardReceiver reads
+ * the chunks straight into row ranges of one features and one labels array and calls
+ * arrived(); next() hands out a batch as soon as its rows are in, so the first epoch
+ * starts after one chunk rather than the whole shard. Later epochs (reset()) just walk
+ * the same arrays again, and once complete they are the shard's DataSet for the cache.
+ *
+ * Chunks and batches are the same row ranges, so each is one pair of views built up
+ * front: the receiver reads into it and next() hands it out, every epoch, without
+ * allocating. As in ShardBatchIterator, a preprocessor works on a copy of each batch,
+ * and next(num) hands out row views of any size once those rows are in.
+ */
+final class StreamingShardIterator implements DataSetIterator {
+    private static final long serialVersionUID = 1L;
+
+    private final INDArray features, labels;
+    private final int numSamples, batchSize;
+    private final DataSet[] views; // batch i as views, built once
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final transient Condition more = lock.newCondition();
+    private int arrived;       // rows readable so far
+    private Throwable failed;  // set if the stream broke off
+
+    private int pos;           // first row of the next batch (training thread only)
+    private DataSetPreProcessor preProcessor;
+
+    StreamingShardIterator(int numSamples, int numFeatures, int numClasses, int batchSize) {
+        this.numSamples = numSamples;
+        this.batchSize = batchSize;
+        this.features = Nd4j.createUninitialized(DataType.FLOAT, new long[]{numSamples, numFeatures}, 'c');
+        this.labels   = Nd4j.createUninitialized(DataType.FLOAT, new long[]{numSamples, numClasses}, 'c');
+        this.views = new DataSet[(numSamples + batchSize - 1) / batchSize];
+        for (int b = 0; b < views.length; b++) {
+            int from = b * batchSize, to = Math.min(from + batchSize, numSamples);
+            views[b] = new DataSet(
+                    features.get(NDArrayIndex.interval(from, to), NDArrayIndex.all()),
+                    labels.get(NDArrayIndex.interval(from, to), NDArrayIndex.all()));
+        }
+    }
+
+    int numSamples() {
+        return numSamples;
+    }
+
+    /** Number of chunks (= batches) the shard arrives in. */
+    int chunks() {
+        return views.length;
+    }
+
+    /** Features and labels of chunk i, for the receiver to read into. */
+    DataSet chunk(int i) {
+        return views[i];
+    }
+
+    /** First row after chunk i. */
+    int chunkEnd(int i) {
+        return Math.min((i + 1) * batchSize, numSamples);
+    }
+
+    /** Receiver side: rows up to (not including) to have been read. */
+    void arrived(int to) {
+        lock.lock();
+        try {
+            arrived = to;
+            more.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Receiver side: no more rows are coming; a waiting next() throws. */
+    void fail(Throwable t) {
+        lock.lock();
+        try {
+            failed = t;
+            more.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** The whole shard; only valid once every row has arrived. */
+    DataSet full() {
+        return new DataSet(features, labels);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return pos < numSamples;
+    }
+
+    @Override
+    public DataSet next() {
+        if (pos % batchSize != 0) return next(batchSize); // knocked off the grid by next(num)
+        int b = pos / batchSize;
+        awaitRows(chunkEnd(b));
+        pos = chunkEnd(b);
+        return preProcessed(views[b]);
+    }
+
+    @Override
+    public DataSet next(int num) {
+        int from = pos, to = Math.min(from + num, numSamples);
+        awaitRows(to);
+        pos = to;
+        return preProcessed(new DataSet(
+                features.get(NDArrayIndex.interval(from, to), NDArrayIndex.all()),
+                labels.get(NDArrayIndex.interval(from, to), NDArrayIndex.all())));
+    }
+
+    // on a copy: the views are the shard's own rows, trained again next epoch and cached
+    private DataSet preProcessed(DataSet batch) {
+        if (preProcessor == null) return batch;
+        DataSet copy = batch.copy();
+        preProcessor.preProcess(copy);
+        return copy;
+    }
+
+    private void awaitRows(int to) {
+        lock.lock();
+        try {
+            while (arrived < to) {
+                if (failed != null) throw new IllegalStateException("shard stream broke off", failed);
+                more.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int inputColumns() {
+        return (int) features.size(1);
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return (int) labels.size(1);
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    // batches must be taken on the training thread, in order, as they arrive
+    @Override
+    public boolean asyncSupported() {
+        return false;
+    }
+
+    @Override
+    public void reset() {
+        pos = 0;
+    }
+
+    @Override
+    public int batch() {
+        return batchSize;
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return IDXLabelReader.CLASS_NAMES;
+    }
+
+    // views into a shard still being written by another thread; nothing worth writing out
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        throw new NotSerializableException(getClass().getName());
+    }
+}
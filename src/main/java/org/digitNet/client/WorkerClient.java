@@ -3,34 +3,92 @@ package org.digitNet.client;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.optimize.listeners.ScoreIterationListener;
-import org.digitNet.SerializationUtil;
+import org.digitNet.CliOptions;
+import org.digitNet.ShardCache;
+import org.digitNet.TensorChannel;
+import org.digitNet.codec.UpdateCodec;
+import org.digitNet.codec.UpdateCodecs;
+import org.digitNet.metrics.Metrics;
 import org.digitNet.server.MessageType;
+import org.digitNet.server.PartitionClient;
+import org.digitNet.server.PartitionTable;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
-import org.deeplearning4j.datasets.iterator.impl.ListDataSetIterator;
-import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Worker: handshake once, then loop pulling shards until done.
  */
 public class WorkerClient {
     public static void main(String[] args) throws Exception {
-        if (args.length != 2) {
-            System.err.println("Usage: WorkerClient <masterHost> <masterPort>");
+        CliOptions opts = new CliOptions(args);
+        if (opts.size() < 2 || opts.size() > 4) {
+            System.err.println("Usage: WorkerClient <masterHost> <masterPort> [shardCacheMB] [codec] [--prefetch=N] [--replicas=N] [--shuffle] [--no-stream] [--metrics-port=N]");
+            System.err.println("  codec: full | delta | fp16 | int8 | topk:<ratio>  (default full)");
+            System.err.println("  prefetch: shards received ahead while training (default 1)");
+            System.err.println("  replicas: model replicas training each shard in parallel, averaged locally (default 1, 0: one per core)");
+            System.err.println("  shuffle: reshuffle each shard's samples every local epoch (default: in order)");
+            System.err.println("  no-stream: receive each shard whole before training it (streaming needs replicas=1, no shuffle)");
+            System.err.println("  metrics-port: serve metrics at http://127.0.0.1:N/metrics (default off)");
             System.exit(1);
         }
-        String host = args[0];
-        int    port = Integer.parseInt(args[1]);
+        String host    = opts.get(0);
+        int    port    = Integer.parseInt(opts.get(1));
+        long   cacheMB = opts.size() > 2 ? Long.parseLong(opts.get(2)) : 256;
+        String codecSpec = opts.size() > 3 ? opts.get(3) : "full";
+        int    prefetch  = opts.intFlag("prefetch", 1);
+        int    replicas  = opts.intFlag("replicas", 1);
+        if (replicas <= 0) replicas = Runtime.getRuntime().availableProcessors();
+        boolean shuffle  = opts.has("shuffle");
+        // replicas split a shard by rows, so they need all of it before they start
+        // a streamed shard's first epoch goes in arrival order, so shuffling needs the whole shard
+        boolean stream   = replicas == 1 && !shuffle && !opts.has("no-stream");
+        Metrics.expose(opts.intFlag("metrics-port", 0));
 
-        try (Socket sock = new Socket(host, port);
+        // the server turns connections away while it is at capacity; back off and retry
+        long backoffMs = 1000;
+        while (!runSession(host, port, cacheMB, codecSpec, prefetch, replicas, stream, shuffle)) {
+            System.out.printf("Server busy; retrying in %d ms%n", backoffMs);
+            Thread.sleep(backoffMs);
+            backoffMs = Math.min(backoffMs * 2, 30_000);
+        }
+        Metrics.stop();
+    }
+
+    // One connection's lifetime. Returns false if the server was at capacity.
+    private static boolean runSession(String host, int port, long cacheMB, String codecSpec,
+                                      int prefetch, int replicas, boolean stream,
+                                      boolean shuffle) throws Exception {
+        try (SocketChannel ch = SocketChannel.open(new InetSocketAddress(host, port));
+             Socket sock = ch.socket();
              DataOutputStream out = new DataOutputStream(sock.getOutputStream());
              DataInputStream  in  = new DataInputStream(sock.getInputStream()))
         {
+            sock.setTcpNoDelay(true);
+            int status = in.readInt();
+            if (status == MessageType.SERVER_BUSY.code) return false;
+            if (status != MessageType.ACCEPTED.code) {
+                throw new RuntimeException("Unexpected code: " + status);
+            }
+
+            // tensors go straight between the socket and ND4J's off-heap buffers;
+            // one instance per direction since the receiver thread reads while we write
+            TensorChannel tensorsOut = new TensorChannel(ch);
+            TensorChannel tensorsIn  = new TensorChannel(ch);
+
             // handshake: model JSON
             int cLen = in.readInt();
             byte[] cBuf = new byte[cLen];
@@ -46,53 +104,143 @@ public class WorkerClient {
             System.out.printf("Handshake received: localEpochs=%d, batchSize=%d%n",
                     localEpochs, batchSize);
 
+            // handshake: tell the server how much shard data we keep between dispatches
+            ShardCache<DataSet> cache = new ShardCache<>(cacheMB * 1024 * 1024);
+            out.writeLong(cacheMB * 1024 * 1024);
+
+            // handshake: codec negotiation; the server may fall back to another spec
+            out.writeUTF(codecSpec);
+            // handshake: how many shards beyond the current one we want in flight
+            out.writeInt(prefetch);
+            // handshake: capacity, i.e. replicas training in parallel, so the server can size our shards
+            out.writeInt(replicas);
+            // handshake: whether shard data should come in mini-batch chunks we can train on as they land
+            out.writeBoolean(stream);
+            out.flush();
+            UpdateCodec codec = UpdateCodecs.create(in.readUTF(), model, true);
+            System.out.println("Using codec " + codec.spec() + ", prefetch " + prefetch + ", " + replicas + " replicas"
+                    + (stream ? ", streamed shards" : ""));
+
+            // handshake: partition table; if non-empty, params come from / go to those servers
+            PartitionTable table = PartitionTable.read(in);
+            List<PartitionClient> partitions = new ArrayList<>();
+            for (PartitionTable.Entry e : table.entries()) partitions.add(new PartitionClient(e));
+            ExecutorService io = Executors.newVirtualThreadPerTaskExecutor();
+            if (!partitions.isEmpty()) {
+                System.out.printf("Params split over %d partition servers%n", partitions.size());
+            }
+
             // log loss every 10 minibatches
             model.setListeners(new ScoreIterationListener(10));
+            ReplicaTrainer trainer = new ReplicaTrainer(model, replicas, shuffle);
+
+            // receive shards on a background thread while we train
+            ShardReceiver receiver = new ShardReceiver(in, tensorsIn, codec, cache,
+                    partitions.isEmpty(), model.params(), prefetch, batchSize);
+            Thread rx = new Thread(receiver, "shard-receiver");
+            rx.setDaemon(true);
+            rx.start();
+            Metrics.gauge("worker.prefetched", receiver::queued);
+
+            // last params pulled from the partitions; a pull skips partitions that haven't moved
+            INDArray pulled = partitions.isEmpty() ? null : model.params().dup();
+            int rejected = 0;
 
             // shard loop
             while (true) {
-                int code = in.readInt();
-                if (code == MessageType.NO_MORE_SHARDS.code) {
+                ShardReceiver.Assignment job = receiver.take();
+                if (job == null) {
                     System.out.println("No more shards; exiting.");
                     break;
                 }
-                if (code != MessageType.SHARD_DATA.code) {
-                    throw new RuntimeException("Unexpected code: " + code);
-                }
 
-                // receive global params
-                int pLen = in.readInt();
-                byte[] pBuf = new byte[pLen];
-                in.readFully(pBuf);
-                model.setParams(Nd4j.fromByteArray(pBuf));
-
-                // receive features
-                int xLen = in.readInt();
-                byte[] xBuf = new byte[xLen]; in.readFully(xBuf);
-                INDArray X = Nd4j.fromByteArray(xBuf);
-
-                // receive labels
-                int yLen = in.readInt();
-                byte[] yBuf = new byte[yLen]; in.readFully(yBuf);
-                INDArray Y = Nd4j.fromByteArray(yBuf);
-
-                // local training per epochs
-                List<DataSet> data = new DataSet(X, Y).asList();
-                var iter = new ListDataSetIterator<>(data, batchSize);
-                for (int e = 1; e <= localEpochs; e++) {
-                    iter.reset();
-                    model.fit(iter);
-                    System.out.printf("  epoch %d/%d, loss=%.4f%n",
-                            e, localEpochs, model.score());
+                // start from the global params
+                if (!partitions.isEmpty()) {
+                    forEachPartition(io, partitions, pc -> pc.pullInto(slice(pulled, pc), false));
+                    model.setParams(pulled);
+                } else {
+                    model.setParams(job.params);
                 }
 
+                // local training per epochs, split over the replicas
+                long fitStart = System.nanoTime();
+                double loss = job.stream != null
+                        ? trainer.fit(job.stream, localEpochs) // batches as they arrive
+                        : trainer.fit(job.data, batchSize, localEpochs);
+                Metrics.FIT.record(System.nanoTime() - fitStart);
+                System.out.printf("  shard %d: %d epochs on %d replicas in %.1f s, loss=%.4f%n",
+                        job.shardId, localEpochs, trainer.size(), (System.nanoTime() - fitStart) / 1e9, loss);
+
                 // send back updated params
-                byte[] upd = Nd4j.toByteArray(model.params());
-                out.writeInt(upd.length);
-                out.write(upd);
+                if (!partitions.isEmpty()) {
+                    // claim the shard first: a speculative or expired copy elsewhere may already be merged
+                    out.writeInt(MessageType.PARTITIONS_COMMIT.code);
+                    out.flush();
+                    if (!receiver.awaitCommit()) {
+                        System.out.printf("Shard %d already merged from another worker; dropping our update%n",
+                                job.shardId);
+                        continue;
+                    }
+                    // all or nothing: every partition must still take it before any of them gets it
+                    long samples = job.numSamples();
+                    AtomicBoolean stale = new AtomicBoolean();
+                    forEachPartition(io, partitions, pc -> {
+                        if (!pc.admits()) stale.set(true);
+                    });
+                    if (stale.get()) {
+                        rejected++;
+                        out.writeInt(MessageType.PARTITIONS_REJECTED.code);
+                        out.flush();
+                        System.out.printf("Update for shard %d too stale (trained from v%d); not sent%n",
+                                job.shardId, job.version);
+                        continue;
+                    }
+                    forEachPartition(io, partitions, pc -> pc.push(slice(model.params(), pc), samples));
+                    out.writeInt(MessageType.PARTITIONS_PUSHED.code);
+                } else if (codec.sendsRawTensor()) {
+                    tensorsOut.writeTensor(model.params());
+                } else {
+                    // delta against the params this shard was dispatched with
+                    long t0 = System.nanoTime();
+                    byte[] upd = codec.encode(model.params(), job.params);
+                    long t1 = System.nanoTime();
+                    out.writeInt(upd.length);
+                    out.write(upd);
+                    Metrics.SERIALIZE.record(t1 - t0);
+                    Metrics.SEND.record(System.nanoTime() - t1);
+                    Metrics.BYTES_OUT.addAndGet(4 + upd.length);
+                }
                 out.flush();
-                System.out.println("Sent updated parameters");
+                System.out.printf("Sent updated parameters (trained from v%d)%n", job.version);
             }
+            if (rejected > 0) {
+                System.out.printf("%d partition updates were rejected as too stale%n", rejected);
+            }
+
+            io.shutdown();
+            trainer.close();
+            for (PartitionClient pc : partitions) pc.close();
+        }
+        return true;
+    }
+
+    private interface PartitionTask {
+        void run(PartitionClient pc) throws Exception;
+    }
+
+    // runs the task against every partition server in parallel and rethrows the first failure
+    private static void forEachPartition(ExecutorService io, List<PartitionClient> partitions,
+                                         PartitionTask task) throws Exception {
+        List<Future<Void>> futures = new ArrayList<>(partitions.size());
+        for (PartitionClient pc : partitions) {
+            Callable<Void> c = () -> { task.run(pc); return null; };
+            futures.add(io.submit(c));
         }
+        for (Future<Void> f : futures) f.get();
+    }
+
+    private static INDArray slice(INDArray params, PartitionClient pc) {
+        PartitionTable.Entry e = pc.partition();
+        return params.get(NDArrayIndex.all(), NDArrayIndex.interval(e.from, e.to));
     }
 }
@@ -0,0 +1,67 @@
+package org.digitNet.codec;
+
+import org.digitNet.SerializationUtil;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sends target - reference instead of target. The first byte tells the receiver
+ * whether a full vector (no reference yet) or a delta follows; subclasses decide
+ * how the delta itself is packed.
+ */
+public abstract class DeltaCodec implements UpdateCodec {
+    private static final byte FULL  = 0;
+    private static final byte DELTA = 1;
+
+    // parameter count of each layer, in the order MultiLayerNetwork flattens them
+    protected final long[] layerSizes;
+
+    protected DeltaCodec(long[] layerSizes) {
+        this.layerSizes = layerSizes;
+    }
+
+    /** Packs the delta; must write exactly the bytes decodeDelta reads back. */
+    protected abstract byte[] encodeDelta(float[] delta);
+
+    /** Unpacks n delta values produced by encodeDelta. */
+    protected abstract float[] decodeDelta(ByteBuffer buf, int n);
+
+    @Override
+    public byte[] encode(INDArray target, INDArray reference) {
+        if (reference == null) {
+            byte[] full = SerializationUtil.toBytes(target);
+            return ByteBuffer.allocate(1 + full.length).put(FULL).put(full).array();
+        }
+        float[] delta = target.sub(reference).data().asFloat();
+        byte[] packed = encodeDelta(delta);
+        return ByteBuffer.allocate(1 + packed.length).put(DELTA).put(packed).array();
+    }
+
+    @Override
+    public INDArray decode(byte[] raw, INDArray reference) {
+        ByteBuffer buf = ByteBuffer.wrap(raw);
+        byte kind = buf.get();
+        if (kind == FULL) {
+            byte[] full = new byte[buf.remaining()];
+            buf.get(full);
+            return SerializationUtil.fromBytes(full);
+        }
+        if (reference == null) {
+            throw new IllegalStateException(spec() + ": delta received without a reference");
+        }
+        float[] delta = decodeDelta(buf, (int) reference.length());
+        return reference.add(Nd4j.create(delta, reference.shape(), 'c'));
+    }
+
+    // [start, end) offsets of each layer; falls back to one segment if sizes don't add up
+    protected long[] segmentBounds(int n) {
+        long sum = 0;
+        for (long s : layerSizes) sum += s;
+        if (sum != n) return new long[]{0, n};
+        long[] bounds = new long[layerSizes.length + 1];
+        for (int i = 0; i < layerSizes.length; i++) bounds[i + 1] = bounds[i] + layerSizes[i];
+        return bounds;
+    }
+}
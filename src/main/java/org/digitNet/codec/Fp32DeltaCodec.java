@@ -0,0 +1,29 @@
+package org.digitNet.codec;
+
+import java.nio.ByteBuffer;
+
+// Uncompressed float delta: same size as full, but the base for lossy variants
+public class Fp32DeltaCodec extends DeltaCodec {
+    public Fp32DeltaCodec(long[] layerSizes) {
+        super(layerSizes);
+    }
+
+    @Override
+    public String spec() {
+        return "delta";
+    }
+
+    @Override
+    protected byte[] encodeDelta(float[] delta) {
+        ByteBuffer buf = ByteBuffer.allocate(4 * delta.length);
+        buf.asFloatBuffer().put(delta);
+        return buf.array();
+    }
+
+    @Override
+    protected float[] decodeDelta(ByteBuffer buf, int n) {
+        float[] delta = new float[n];
+        buf.asFloatBuffer().get(delta);
+        return delta;
+    }
+}
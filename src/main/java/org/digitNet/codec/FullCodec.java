@@ -0,0 +1,32 @@
+package org.digitNet.codec;
+
+import org.digitNet.SerializationUtil;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+// Plain Nd4j serialization of the whole vector (the original wire format)
+public class FullCodec implements UpdateCodec {
+    @Override
+    public String spec() {
+        return "full";
+    }
+
+    @Override
+    public byte[] encode(INDArray target, INDArray reference) {
+        return SerializationUtil.toBytes(target);
+    }
+
+    @Override
+    public INDArray decode(byte[] raw, INDArray reference) {
+        return SerializationUtil.fromBytes(raw);
+    }
+
+    @Override
+    public boolean needsReference() {
+        return false;
+    }
+
+    @Override
+    public boolean sendsRawTensor() {
+        return true;
+    }
+}
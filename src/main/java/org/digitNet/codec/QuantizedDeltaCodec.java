@@ -0,0 +1,65 @@
+package org.digitNet.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Delta quantized to fp16 or int8 with one scale per layer (max |delta| of the layer),
+ * so layers with very different magnitudes keep their own resolution.
+ * Layout: per layer [float scale][values...].
+ */
+public class QuantizedDeltaCodec extends DeltaCodec {
+    public enum Precision { FP16, INT8 }
+
+    private final Precision precision;
+
+    public QuantizedDeltaCodec(long[] layerSizes, Precision precision) {
+        super(layerSizes);
+        this.precision = precision;
+    }
+
+    @Override
+    public String spec() {
+        return precision == Precision.FP16 ? "fp16" : "int8";
+    }
+
+    @Override
+    protected byte[] encodeDelta(float[] delta) {
+        long[] bounds = segmentBounds(delta.length);
+        int layers = bounds.length - 1;
+        int valueBytes = precision == Precision.FP16 ? 2 : 1;
+        ByteBuffer buf = ByteBuffer.allocate(4 * layers + valueBytes * delta.length);
+
+        for (int l = 0; l < layers; l++) {
+            int from = (int) bounds[l], to = (int) bounds[l + 1];
+            float max = 0f;
+            for (int i = from; i < to; i++) max = Math.max(max, Math.abs(delta[i]));
+            float scale = max == 0f ? 1f : max;
+            buf.putFloat(scale);
+
+            if (precision == Precision.FP16) {
+                for (int i = from; i < to; i++) buf.putShort(Float.floatToFloat16(delta[i] / scale));
+            } else {
+                for (int i = from; i < to; i++) buf.put((byte) Math.round(delta[i] / scale * 127f));
+            }
+        }
+        return buf.array();
+    }
+
+    @Override
+    protected float[] decodeDelta(ByteBuffer buf, int n) {
+        long[] bounds = segmentBounds(n);
+        float[] delta = new float[n];
+
+        for (int l = 0; l < bounds.length - 1; l++) {
+            int from = (int) bounds[l], to = (int) bounds[l + 1];
+            float scale = buf.getFloat();
+
+            if (precision == Precision.FP16) {
+                for (int i = from; i < to; i++) delta[i] = Float.float16ToFloat(buf.getShort()) * scale;
+            } else {
+                for (int i = from; i < to; i++) delta[i] = buf.get() * scale / 127f;
+            }
+        }
+        return delta;
+    }
+}
@@ -0,0 +1,73 @@
+package org.digitNet.codec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Sends only the k largest-magnitude delta entries as (index, value) pairs.
+ *
+ * With error feedback on, whatever was not sent is kept in a residual and added
+ * to the next delta, so small updates are delayed instead of lost. Only the
+ * worker's return path uses it: the server's broadcast delta is already taken
+ * against what the worker actually holds, which carries the leftover forward.
+ */
+public class TopKDeltaCodec extends DeltaCodec {
+    private final double ratio;
+    private final boolean errorFeedback;
+    private float[] residual;
+
+    public TopKDeltaCodec(long[] layerSizes, double ratio, boolean errorFeedback) {
+        super(layerSizes);
+        if (ratio <= 0 || ratio > 1) throw new IllegalArgumentException("top-k ratio must be in (0, 1]");
+        this.ratio = ratio;
+        this.errorFeedback = errorFeedback;
+    }
+
+    @Override
+    public String spec() {
+        return "topk:" + ratio;
+    }
+
+    @Override
+    protected byte[] encodeDelta(float[] delta) {
+        if (errorFeedback) {
+            if (residual == null || residual.length != delta.length) residual = new float[delta.length];
+            for (int i = 0; i < delta.length; i++) delta[i] += residual[i];
+        }
+
+        int k = Math.max(1, (int) Math.ceil(ratio * delta.length));
+        float threshold = kthLargestMagnitude(delta, k);
+
+        ByteBuffer buf = ByteBuffer.allocate(4 + 8 * k);
+        buf.putInt(0); // count, patched below
+        int sent = 0;
+        for (int i = 0; i < delta.length && sent < k; i++) {
+            if (Math.abs(delta[i]) >= threshold && delta[i] != 0f) {
+                buf.putInt(i).putFloat(delta[i]);
+                delta[i] = 0f; // sent, so nothing left over
+                sent++;
+            }
+        }
+        buf.putInt(0, sent);
+        if (errorFeedback) System.arraycopy(delta, 0, residual, 0, delta.length);
+        return Arrays.copyOf(buf.array(), 4 + 8 * sent);
+    }
+
+    @Override
+    protected float[] decodeDelta(ByteBuffer buf, int n) {
+        float[] delta = new float[n];
+        int count = buf.getInt();
+        for (int j = 0; j < count; j++) {
+            int idx = buf.getInt();
+            delta[idx] = buf.getFloat();
+        }
+        return delta;
+    }
+
+    private static float kthLargestMagnitude(float[] values, int k) {
+        float[] mags = new float[values.length];
+        for (int i = 0; i < values.length; i++) mags[i] = Math.abs(values[i]);
+        Arrays.sort(mags);
+        return mags[mags.length - k];
+    }
+}
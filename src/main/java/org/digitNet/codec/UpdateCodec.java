@@ -0,0 +1,31 @@
+package org.digitNet.codec;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * Encodes a parameter vector for the wire, optionally relative to a reference
+ * vector both ends already share (the params the worker last received).
+ *
+ * One instance is created per connection on each side, because some codecs keep
+ * state between calls (e.g. top-k error feedback).
+ */
+public interface UpdateCodec {
+    /** The spec string this codec was created from, as sent in the handshake. */
+    String spec();
+
+    /** Encodes target; reference may be null (first exchange), in which case target is sent in full. */
+    byte[] encode(INDArray target, INDArray reference);
+
+    /** Rebuilds the target from encode's output and the same reference. */
+    INDArray decode(byte[] raw, INDArray reference);
+
+    /** False if the codec ignores the reference, so callers can skip tracking it. */
+    default boolean needsReference() {
+        return true;
+    }
+
+    /** True if the payload is the params tensor itself, so it can go through TensorChannel as-is. */
+    default boolean sendsRawTensor() {
+        return false;
+    }
+}
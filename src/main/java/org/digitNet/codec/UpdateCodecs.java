@@ -0,0 +1,38 @@
+package org.digitNet.codec;
+
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+
+/**
+ * Builds codecs from the spec strings exchanged in the handshake:
+ * "full", "delta", "fp16", "int8" or "topk:&lt;ratio&gt;" (e.g. "topk:0.01").
+ */
+public class UpdateCodecs {
+    private UpdateCodecs() {}
+
+    /**
+     * @param errorFeedback keep the unsent top-k remainder between encodes (worker side only)
+     * @throws IllegalArgumentException for an unknown spec
+     */
+    public static UpdateCodec create(String spec, MultiLayerNetwork model, boolean errorFeedback) {
+        long[] layerSizes = layerSizes(model);
+        String s = spec.trim().toLowerCase();
+        if (s.equals("full"))  return new FullCodec();
+        if (s.equals("delta")) return new Fp32DeltaCodec(layerSizes);
+        if (s.equals("fp16"))  return new QuantizedDeltaCodec(layerSizes, QuantizedDeltaCodec.Precision.FP16);
+        if (s.equals("int8"))  return new QuantizedDeltaCodec(layerSizes, QuantizedDeltaCodec.Precision.INT8);
+        if (s.startsWith("topk:")) {
+            double ratio = Double.parseDouble(s.substring("topk:".length()));
+            return new TopKDeltaCodec(layerSizes, ratio, errorFeedback);
+        }
+        throw new IllegalArgumentException("Unknown codec: " + spec);
+    }
+
+    // parameter count per layer, in flattened-params order
+    public static long[] layerSizes(MultiLayerNetwork model) {
+        Layer[] layers = model.getLayers();
+        long[] sizes = new long[layers.length];
+        for (int i = 0; i < layers.length; i++) sizes[i] = layers[i].numParams();
+        return sizes;
+    }
+}
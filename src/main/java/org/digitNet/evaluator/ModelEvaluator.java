@@ -2,51 +2,46 @@ package org.digitNet.evaluator;
 
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.util.ModelSerializer;
+import org.digitNet.CliOptions;
 import org.digitNet.IDXFileReader;
 import org.digitNet.IDXLabelReader;
-import org.nd4j.evaluation.classification.Evaluation;
-import org.nd4j.linalg.dataset.DataSet;
-import org.deeplearning4j.datasets.iterator.impl.ListDataSetIterator;
 
 public class ModelEvaluator {
     public static void main(String[] args) throws Exception {
-        if (args.length < 3) {
+        CliOptions opts = new CliOptions(args);
+        if (opts.size() < 3) {
             System.err.println(
-                    "Usage: ModelEvaluator <modelFile> <testImages> <testLabels> [batchSize]"
+                    "Usage: ModelEvaluator <modelFile> <testImages> <testLabels> [batchSize] [--threads=N]"
             );
             System.exit(1);
         }
 
-        String modelFile   = args[0];
-        String testImages  = args[1];
-        String testLabels  = args[2];
-        int batchSize      = args.length > 3
-                ? Integer.parseInt(args[3])
+        String modelFile   = opts.get(0);
+        String testImages  = opts.get(1);
+        String testLabels  = opts.get(2);
+        int batchSize      = opts.size() > 3
+                ? Integer.parseInt(opts.get(3))
                 : 64;
+        int threads        = opts.intFlag("threads", 0); // 0: one model replica per core
 
         // Load the saved model
         MultiLayerNetwork model = ModelSerializer
                 .restoreMultiLayerNetwork(modelFile);
 
-        // Load test data
+        // Map test data; batches are normalized / one-hot expanded as they are evaluated
         IDXFileReader imagesReader = new IDXFileReader(testImages);
         IDXLabelReader labelsReader = new IDXLabelReader(testLabels);
-        DataSet testData = new DataSet(
-                imagesReader.getFeatures(),
-                labelsReader.getLabels()
-        );
 
-        // Wrap in an iterator and evaluate
-        var iter = new ListDataSetIterator<>(testData.asList(), batchSize);
-        Evaluation eval = new Evaluation(labelsReader.getLabels().columns());
-        while (iter.hasNext()) {
-            var ds = iter.next();
-            var output = model.output(ds.getFeatures(), false);
-            eval.eval(ds.getLabels(), output);
+        ParallelEvaluator.Result result;
+        try (ParallelEvaluator evaluator =
+                     new ParallelEvaluator(model, imagesReader, labelsReader, batchSize, threads)) {
+            result = evaluator.evaluate();
+            System.out.println("Evaluated on " + evaluator.threads() + " threads");
         }
 
         // Print results
         System.out.println("=== Final Model Evaluation ===");
-        System.out.println(eval.stats());
+        System.out.println(result.eval.stats());
+        System.out.println(result.summary());
     }
 }
@@ -0,0 +1,130 @@
+package org.digitNet.evaluator;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.digitNet.IDXFileReader;
+import org.digitNet.IDXLabelReader;
+import org.digitNet.metrics.LatencyHistogram;
+import org.nd4j.evaluation.classification.Evaluation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluates params on the mapped test set with one model replica per thread.
+ *
+ * Threads take mini-batches off a shared counter, so only the batch being scored is ever
+ * expanded to floats. Each replica keeps its own Evaluation; they are merged at the end.
+ * A network isn't safe to share between threads (it keeps its activations), hence the
+ * replicas; their params are overwritten with the ones being evaluated on every run.
+ */
+public class ParallelEvaluator implements AutoCloseable {
+
+    /** Merged accuracy stats plus how long it took. */
+    public static final class Result {
+        public final Evaluation eval;
+        public final int images;
+        public final long nanos;
+        public final LatencyHistogram batchLatency;
+
+        Result(Evaluation eval, int images, long nanos, LatencyHistogram batchLatency) {
+            this.eval = eval;
+            this.images = images;
+            this.nanos = nanos;
+            this.batchLatency = batchLatency;
+        }
+
+        public double imagesPerSec() {
+            return nanos == 0 ? 0 : images / (nanos / 1e9);
+        }
+
+        /** "N images in T s (X images/s), batch latency p50 .. p99 .. max .. ms" */
+        public String summary() {
+            return String.format("%d images in %.2f s (%.0f images/s), batch latency p50 %.1f ms, p99 %.1f ms, max %.1f ms",
+                    images, nanos / 1e9, imagesPerSec(),
+                    batchLatency.quantileNanos(0.50) / 1e6, batchLatency.quantileNanos(0.99) / 1e6,
+                    batchLatency.maxNanos() / 1e6);
+        }
+    }
+
+    private final IDXFileReader images;
+    private final IDXLabelReader labels;
+    private final int batchSize;
+    private final List<MultiLayerNetwork> replicas = new ArrayList<>();
+    private final ExecutorService pool;
+
+    /**
+     * @param model   architecture to replicate; its params are only used if evaluate() is
+     *                called without any
+     * @param threads replicas to run at once (0: one per core)
+     */
+    public ParallelEvaluator(MultiLayerNetwork model, IDXFileReader images, IDXLabelReader labels,
+                             int batchSize, int threads) {
+        if (threads <= 0) threads = Runtime.getRuntime().availableProcessors();
+        this.images = images;
+        this.labels = labels;
+        this.batchSize = batchSize;
+        for (int i = 0; i < threads; i++) replicas.add(model.clone());
+        AtomicInteger n = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "evaluator-" + n.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public int threads() {
+        return replicas.size();
+    }
+
+    /** Scores the replicas' current params. */
+    public Result evaluate() throws InterruptedException {
+        return evaluate(null);
+    }
+
+    /** Scores params (copied into every replica first; null keeps theirs). Not reentrant. */
+    public Result evaluate(INDArray params) throws InterruptedException {
+        if (params != null) {
+            for (MultiLayerNetwork m : replicas) m.setParams(params);
+        }
+        int total = Math.min(images.getNumImages(), labels.getNumLabels());
+        int batches = (total + batchSize - 1) / batchSize;
+        AtomicInteger next = new AtomicInteger();
+        LatencyHistogram latency = new LatencyHistogram();
+
+        long t0 = System.nanoTime();
+        List<Future<Evaluation>> parts = new ArrayList<>(replicas.size());
+        for (MultiLayerNetwork m : replicas) {
+            parts.add(pool.submit(() -> {
+                Evaluation eval = new Evaluation(IDXLabelReader.NUM_CLASSES);
+                for (int b; (b = next.getAndIncrement()) < batches; ) {
+                    int from = b * batchSize;
+                    int to = Math.min(from + batchSize, total);
+                    long s = System.nanoTime();
+                    INDArray output = m.output(images.getFeatures(from, to), false);
+                    eval.eval(labels.getLabels(from, to), output);
+                    latency.record(System.nanoTime() - s);
+                }
+                return eval;
+            }));
+        }
+
+        Evaluation merged = new Evaluation(IDXLabelReader.NUM_CLASSES);
+        try {
+            for (Future<Evaluation> f : parts) merged.merge(f.get());
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Evaluation failed", e.getCause());
+        }
+        return new Result(merged, total, System.nanoTime() - t0, latency);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,126 @@
+package org.digitNet.inference;
+
+import org.digitNet.CliOptions;
+import org.digitNet.IDXFileReader;
+import org.digitNet.IDXLabelReader;
+import org.digitNet.metrics.LatencyHistogram;
+import org.digitNet.server.MessageType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Load generator for InferenceServer: replays test images over several connections, each
+ * keeping up to --pipeline requests in flight, and reports throughput, client-side
+ * latency percentiles and (given labels) accuracy.
+ */
+public class InferenceClient {
+    public static void main(String[] args) throws Exception {
+        CliOptions opts = new CliOptions(args);
+        if (opts.size() < 3 || opts.size() > 4) {
+            System.err.println(
+                    "Usage: InferenceClient <host> <port> <testImages> [testLabels]" +
+                            " [--connections=N] [--requests=N] [--pipeline=N]"
+            );
+            System.exit(1);
+        }
+        String host        = opts.get(0);
+        int    port        = Integer.parseInt(opts.get(1));
+        IDXFileReader images = new IDXFileReader(opts.get(2));
+        byte[] classes     = opts.size() > 3 ? new IDXLabelReader(opts.get(3)).getClassIndices() : null;
+        int    connections = opts.intFlag("connections", 8);
+        int    requests    = opts.intFlag("requests", images.getNumImages()); // per connection
+        int    pipeline    = opts.intFlag("pipeline", 4);                     // in flight per connection
+
+        // raw pixels copied out once, so sending costs nothing
+        byte[][] pixels = new byte[images.getNumImages()][images.getImageSize()];
+        for (int i = 0; i < pixels.length; i++) images.copyPixels(i, pixels[i]);
+
+        LatencyHistogram latency = new LatencyHistogram();
+        AtomicLong correct = new AtomicLong();
+        AtomicInteger failed = new AtomicInteger();
+        long t0 = System.nanoTime();
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < connections; c++) {
+            int offset = c * 997; // connections start at different images
+            threads.add(Thread.ofVirtual().start(() -> {
+                try {
+                    run(host, port, pixels, classes, offset, requests, pipeline, latency, correct);
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    System.err.println("Connection failed: " + e);
+                }
+            }));
+        }
+        for (Thread t : threads) t.join();
+        double secs = (System.nanoTime() - t0) / 1e9;
+
+        long total = latency.count();
+        System.out.printf("%d requests over %d connections (%d failed) in %.2f s: %.0f req/s%n",
+                total, connections, failed.get(), secs, total / secs);
+        System.out.printf("Latency p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms%n",
+                latency.quantileNanos(0.50) / 1e6, latency.quantileNanos(0.90) / 1e6,
+                latency.quantileNanos(0.99) / 1e6, latency.quantileNanos(0.999) / 1e6, latency.maxNanos() / 1e6);
+        if (classes != null && total > 0) {
+            System.out.printf("Accuracy %.4f%n", correct.get() / (double) total);
+        }
+    }
+
+    private static void run(String host, int port, byte[][] pixels, byte[] classes, int offset, int requests,
+                            int pipeline, LatencyHistogram latency, AtomicLong correct) throws Exception {
+        try (Socket socket = new Socket(host, port);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+             DataInputStream  in  = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16)))
+        {
+            socket.setTcpNoDelay(true);
+            int status = in.readInt();
+            if (status != MessageType.ACCEPTED.code) throw new IOException("not accepted: " + MessageType.fromCode(status));
+            int size = in.readInt() * in.readInt();
+            if (size != pixels[0].length) throw new IOException("server expects " + size + " pixels per image");
+
+            AtomicLongArray sentAt = new AtomicLongArray(requests); // written by us, read by the receiver
+            Semaphore window = new Semaphore(pipeline);
+            Thread receiver = Thread.ofVirtual().start(() -> {
+                try {
+                    for (int n = 0; n < requests; n++) {
+                        int code = in.readInt();
+                        if (code != MessageType.INFER_RESULT.code) throw new IOException("unexpected " + MessageType.fromCode(code));
+                        int id = in.readInt();
+                        int digit = in.readInt();
+                        for (int c = 0; c < IDXLabelReader.NUM_CLASSES; c++) in.readFloat();
+                        latency.record(System.nanoTime() - sentAt.get(id));
+                        if (classes != null && classes[(offset + id) % classes.length] == digit) correct.incrementAndGet();
+                        window.release();
+                    }
+                } catch (IOException e) {
+                    System.err.println("Receive failed: " + e);
+                    window.release(requests); // let the sender run into the shut-down socket
+                    try {
+                        socket.shutdownOutput();
+                    } catch (IOException ignored) {
+                    }
+                }
+            });
+
+            for (int id = 0; id < requests; id++) {
+                window.acquire();
+                sentAt.set(id, System.nanoTime());
+                out.writeInt(MessageType.INFER.code);
+                out.writeInt(id);
+                out.write(pixels[(offset + id) % pixels.length]);
+                out.flush();
+            }
+            receiver.join();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.digitNet.inference;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.util.ModelSerializer;
+import org.digitNet.CliOptions;
+import org.digitNet.IDXLabelReader;
+import org.digitNet.metrics.LatencyHistogram;
+import org.digitNet.metrics.Metrics;
+import org.digitNet.server.ConnectionAcceptor;
+import org.digitNet.server.MessageType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves digit predictions from a model saved by ParameterServer.
+ *
+ * Clients send INFER requests (an id and the raw 28x28 pixels) and may keep many of them
+ * in flight on one connection. Every request goes to a shared MicroBatcher, so requests
+ * from all connections are classified together; a per-connection writer sends the
+ * INFER_RESULTs back in request order as their batches finish.
+ */
+public class InferenceServer {
+    static final int ROWS = 28, COLS = 28;
+
+    private final MicroBatcher batcher;
+
+    private InferenceServer(MicroBatcher batcher) {
+        this.batcher = batcher;
+    }
+
+    public static void main(String[] args) throws Exception {
+        CliOptions opts = new CliOptions(args);
+        if (opts.size() != 2) {
+            System.err.println(
+                    "Usage: InferenceServer <modelFile> <port> [--max-batch=N] [--max-wait-us=N]" +
+                            " [--threads=N] [--max-clients=N] [--metrics-port=N]"
+            );
+            System.exit(1);
+        }
+        String modelFile  = opts.get(0);
+        int    port       = Integer.parseInt(opts.get(1));
+        int    maxBatch   = opts.intFlag("max-batch", 64);     // images per model.output call
+        long   maxWaitUs  = opts.longFlag("max-wait-us", 2000); // how long a request may wait for a fuller batch
+        int    threads    = opts.intFlag("threads", 1);         // model replicas taking batches
+        int    maxClients = opts.intFlag("max-clients", 1024);
+
+        MultiLayerNetwork model = ModelSerializer.restoreMultiLayerNetwork(modelFile);
+        MicroBatcher batcher = new MicroBatcher(model, ROWS * COLS, maxBatch, maxWaitUs, threads);
+        InferenceServer server = new InferenceServer(batcher);
+
+        ConnectionAcceptor acceptor = new ConnectionAcceptor(port, maxClients, socket -> () -> server.serve(socket));
+        Metrics.gauge("infer.batches", batcher::batches);
+        Metrics.gauge("infer.images", batcher::images);
+        Metrics.gauge("clients.connected", acceptor::activeConnections);
+        Metrics.expose(opts.intFlag("metrics-port", 0));
+
+        // load report every few seconds while requests come in, and once more on the way out
+        ScheduledExecutorService report = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "infer-report");
+            t.setDaemon(true);
+            return t;
+        });
+        long[] last = { 0, System.nanoTime() };
+        report.scheduleAtFixedRate(() -> {
+            long images = batcher.images(), now = System.nanoTime();
+            if (images == last[0]) return;
+            System.out.printf("[infer] %.0f req/s; %s%n",
+                    (images - last[0]) / ((now - last[1]) / 1e9), summary(batcher));
+            last[0] = images;
+            last[1] = now;
+        }, 5, 5, TimeUnit.SECONDS);
+        // on the way out: fail what's still queued, which also ends the busy connections, then the rest
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            batcher.close();
+            try {
+                acceptor.close();
+            } catch (IOException e) {
+                System.err.println("Closing the acceptor failed: " + e);
+            }
+            System.out.println("[infer] final: " + summary(batcher));
+        }));
+
+        acceptor.start();
+        System.out.printf("Inference server on port %d: batches of up to %d, max wait %d us, %d threads%n",
+                port, maxBatch, maxWaitUs, threads);
+        Thread.currentThread().join(); // until killed
+    }
+
+    // running totals; the latency percentiles cover every request since startup
+    private static String summary(MicroBatcher batcher) {
+        LatencyHistogram h = Metrics.INFER;
+        return String.format("%d served in %d batches (%.1f per batch); latency p50 %.2f ms, p90 %.2f ms, "
+                        + "p99 %.2f ms, p99.9 %.2f ms, max %.2f ms",
+                batcher.images(), batcher.batches(), batcher.images() / (double) Math.max(1, batcher.batches()),
+                h.quantileNanos(0.50) / 1e6, h.quantileNanos(0.90) / 1e6, h.quantileNanos(0.99) / 1e6,
+                h.quantileNanos(0.999) / 1e6, h.maxNanos() / 1e6);
+    }
+
+    private record Pending(int id, long startNanos, CompletableFuture<float[]> result) {}
+
+    private static final Pending END = new Pending(-1, 0, null);
+
+    private void serve(Socket socket) {
+        try (socket;
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+             DataInputStream  in  = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16)))
+        {
+            out.writeInt(MessageType.ACCEPTED.code);
+            out.writeInt(ROWS);
+            out.writeInt(COLS);
+            out.flush();
+
+            LinkedBlockingQueue<Pending> pending = new LinkedBlockingQueue<>();
+            Thread writer = Thread.ofVirtual().start(() -> writeResults(socket, pending, out));
+            try {
+                while (true) {
+                    int code;
+                    try {
+                        code = in.readInt();
+                    } catch (EOFException e) {
+                        break; // client done
+                    }
+                    if (code != MessageType.INFER.code) {
+                        throw new IllegalStateException("Unexpected request " + MessageType.fromCode(code));
+                    }
+                    int id = in.readInt();
+                    byte[] pixels = new byte[ROWS * COLS];
+                    in.readFully(pixels);
+                    pending.add(new Pending(id, System.nanoTime(), batcher.submit(pixels)));
+                }
+            } finally {
+                pending.add(END);
+                writer.join();
+            }
+        } catch (Exception e) {
+            System.err.println("Inference client error: " + e);
+        }
+    }
+
+    // sends results in request order; flushes before it would have to wait on the batcher
+    private static void writeResults(Socket socket, LinkedBlockingQueue<Pending> pending, DataOutputStream out) {
+        try {
+            while (true) {
+                Pending p = pending.take();
+                if (p == END) break;
+                float[] probs = p.result.join();
+                int best = 0;
+                for (int c = 1; c < probs.length; c++) if (probs[c] > probs[best]) best = c;
+                out.writeInt(MessageType.INFER_RESULT.code);
+                out.writeInt(p.id);
+                out.writeInt(best);
+                for (int c = 0; c < IDXLabelReader.NUM_CLASSES; c++) out.writeFloat(probs[c]);
+                // flush unless the next result is ready to go out with this one
+                Pending nx = pending.peek();
+                if (nx == null || nx == END || !nx.result.isDone()) out.flush();
+                Metrics.INFER.record(System.nanoTime() - p.startNanos);
+            }
+            out.flush();
+        } catch (Exception e) {
+            System.err.println("Inference reply failed: " + e);
+            try {
+                socket.close(); // unblocks the reader
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.digitNet.inference;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Groups concurrent single-image requests into one model.output call.
+ *
+ * A batch is closed as soon as it holds maxBatch images or its oldest request has waited
+ * maxWait, whichever comes first. Under light load that means a request waits at most
+ * maxWait for company; under heavy load batches fill up immediately and the per-call
+ * overhead is shared by maxBatch images. Each thread runs its own model replica off the
+ * same queue.
+ */
+public class MicroBatcher implements AutoCloseable {
+
+    // one image waiting to be classified
+    private static final class Request {
+        final byte[] pixels;        // raw uint8, as in the IDX file
+        final long arrivalNanos;
+        final CompletableFuture<float[]> result = new CompletableFuture<>(); // class probabilities
+
+        Request(byte[] pixels) {
+            this.pixels = pixels;
+            this.arrivalNanos = System.nanoTime();
+        }
+    }
+
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final int imageSize;
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong images  = new AtomicLong();
+    private volatile boolean running = true;
+
+    public MicroBatcher(MultiLayerNetwork model, int imageSize, int maxBatch, long maxWaitMicros, int numThreads) {
+        this.imageSize    = imageSize;
+        this.maxBatch     = Math.max(1, maxBatch);
+        this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+        for (int i = 0; i < Math.max(1, numThreads); i++) {
+            MultiLayerNetwork replica = i == 0 ? model : model.clone();
+            Thread t = new Thread(() -> loop(replica), "batcher-" + i);
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+        }
+    }
+
+    /** Queues one image; the future completes with its class probabilities (or fails once closed). */
+    public CompletableFuture<float[]> submit(byte[] pixels) {
+        if (pixels.length != imageSize) {
+            throw new IllegalArgumentException("expected " + imageSize + " pixels, got " + pixels.length);
+        }
+        Request r = new Request(pixels);
+        queue.add(r);
+        // raced with close(): make sure it doesn't sit in the queue forever
+        if (!running && queue.remove(r)) r.result.completeExceptionally(shutDown());
+        return r.result;
+    }
+
+    public long batches() {
+        return batches.get();
+    }
+
+    public long images() {
+        return images.get();
+    }
+
+    private void loop(MultiLayerNetwork model) {
+        List<Request> batch = new ArrayList<>(maxBatch);
+        while (running) {
+            try {
+                Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = first.arrivalNanos + maxWaitNanos;
+                queue.drainTo(batch, maxBatch - batch.size());
+                while (batch.size() < maxBatch) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) break;
+                    Request r = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (r == null) break;
+                    batch.add(r);
+                    queue.drainTo(batch, maxBatch - batch.size());
+                }
+                run(model, batch);
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void run(MultiLayerNetwork model, List<Request> batch) {
+        int n = batch.size();
+        try {
+            float[] features = new float[n * imageSize];
+            for (int i = 0; i < n; i++) {
+                byte[] px = batch.get(i).pixels;
+                int base = i * imageSize;
+                for (int j = 0; j < imageSize; j++) features[base + j] = (px[j] & 0xFF) / 255.0f;
+            }
+            INDArray in = Nd4j.create(features, new long[]{n, imageSize}, 'c');
+            float[][] probs = model.output(in, false).toFloatMatrix();
+            batches.incrementAndGet();
+            images.addAndGet(n);
+            for (int i = 0; i < n; i++) batch.get(i).result.complete(probs[i]);
+        } catch (RuntimeException e) {
+            for (Request r : batch) r.result.completeExceptionally(e);
+        }
+    }
+
+    /** Stops the batching threads; requests still queued are failed. Interrupted, it stops waiting but keeps the flag. */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            for (Thread t : threads) t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Request r;
+        IllegalStateException closed = shutDown();
+        while ((r = queue.poll()) != null) r.result.completeExceptionally(closed);
+    }
+
+    private static IllegalStateException shutDown() {
+        return new IllegalStateException("inference server shutting down");
+    }
+}
@@ -0,0 +1,71 @@
+package org.digitNet.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets (8 sub-buckets per power of two,
+ * so quantiles are within ~12.5%). record() only does atomic increments and never
+ * allocates, so it is safe to call on every message.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum   = new AtomicLong();
+    private final AtomicLong max   = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(bucket(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+        long m;
+        while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) { }
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long maxNanos() {
+        return max.get();
+    }
+
+    public long meanNanos() {
+        long n = count.get();
+        return n == 0 ? 0 : sum.get() / n;
+    }
+
+    /** Upper bound of the bucket holding quantile q (0..1), or 0 if nothing was recorded. */
+    public long quantileNanos(double q) {
+        long n = count.get();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts.get(b);
+            if (seen >= rank) return Math.min(upperBound(b), max.get());
+        }
+        return max.get();
+    }
+
+    // values below SUB map 1:1, above that by leading bit + next SUB_BITS bits
+    private static int bucket(long v) {
+        if (v < SUB) return (int) v;
+        int msb = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (msb - SUB_BITS)) & (SUB - 1);
+        return (msb - SUB_BITS + 1) * SUB + sub;
+    }
+
+    private static long upperBound(int b) {
+        if (b < SUB) return b;
+        int msb = b / SUB + SUB_BITS - 1;
+        long sub = b % SUB;
+        long lo = (1L << msb) | (sub << (msb - SUB_BITS));
+        return lo + (1L << (msb - SUB_BITS)) - 1;
+    }
+}
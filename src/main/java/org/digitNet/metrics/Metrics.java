@@ -0,0 +1,169 @@
+package org.digitNet.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide timings and counters for the training pipeline.
+ *
+ * Phases (all in nanoseconds, reported in microseconds):
+ *   serialize   - encoding params/updates with a codec
+ *   send        - writing a tensor to the socket
+ *   fit         - worker training on one shard
+ *   receive     - reading a tensor payload off the socket (after its header arrived)
+ *   deserialize - decoding params/updates with a codec
+ *   aggregate   - one aggregator merge
+ *   infer       - inference server request, from read off the socket to reply written
+ *
+ * Gauges (queue depths etc.) are registered by whoever owns the state and only read
+ * when a snapshot is taken. Everything is exposed as an MBean (org.digitNet:type=Metrics)
+ * and optionally as plain text over HTTP on localhost.
+ */
+public final class Metrics {
+    public static final LatencyHistogram SERIALIZE   = new LatencyHistogram();
+    public static final LatencyHistogram SEND        = new LatencyHistogram();
+    public static final LatencyHistogram FIT         = new LatencyHistogram();
+    public static final LatencyHistogram RECEIVE     = new LatencyHistogram();
+    public static final LatencyHistogram DESERIALIZE = new LatencyHistogram();
+    public static final LatencyHistogram AGGREGATE   = new LatencyHistogram();
+    public static final LatencyHistogram INFER       = new LatencyHistogram();
+
+    public static final AtomicLong BYTES_IN  = new AtomicLong();
+    public static final AtomicLong BYTES_OUT = new AtomicLong();
+
+    private static final Map<String, LatencyHistogram> PHASES = Map.of(
+            "serialize", SERIALIZE, "send", SEND, "fit", FIT,
+            "receive", RECEIVE, "deserialize", DESERIALIZE, "aggregate", AGGREGATE,
+            "infer", INFER);
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentHashMap<>();
+    private static volatile HttpServer http;
+
+    private Metrics() {}
+
+    /** Registers (or replaces) a value read on every snapshot. */
+    public static void gauge(String name, LongSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    /** All current values by name, sorted. */
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> m = new TreeMap<>();
+        PHASES.forEach((name, h) -> {
+            m.put(name + ".count", h.count());
+            m.put(name + ".p50_us", h.quantileNanos(0.50) / 1000);
+            m.put(name + ".p99_us", h.quantileNanos(0.99) / 1000);
+            m.put(name + ".mean_us", h.meanNanos() / 1000);
+            m.put(name + ".max_us", h.maxNanos() / 1000);
+        });
+        m.put("bytes.in", BYTES_IN.get());
+        m.put("bytes.out", BYTES_OUT.get());
+        GAUGES.forEach((name, g) -> m.put(name, g.getAsLong()));
+        return m;
+    }
+
+    /** One "name value" line per metric. */
+    public static String render() {
+        StringBuilder sb = new StringBuilder();
+        snapshot().forEach((k, v) -> sb.append(k).append(' ').append(v).append('\n'));
+        return sb.toString();
+    }
+
+    /**
+     * Registers the MBean and, if port > 0, serves render() at http://127.0.0.1:port/metrics.
+     * Called once from each process's main; pair with stop() so the HTTP thread doesn't
+     * keep the JVM alive.
+     */
+    public static void expose(int port) throws IOException {
+        try {
+            ObjectName name = new ObjectName("org.digitNet:type=Metrics");
+            var mbeans = ManagementFactory.getPlatformMBeanServer();
+            if (!mbeans.isRegistered(name)) mbeans.registerMBean(new Bean(), name);
+        } catch (Exception e) {
+            System.err.println("Could not register metrics MBean: " + e.getMessage());
+        }
+        if (port <= 0) return;
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", ex -> {
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            ex.sendResponseHeaders(200, body.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.setExecutor(null); // the server's own dispatcher thread is plenty
+        server.start();
+        http = server;
+        System.out.println("Metrics at http://127.0.0.1:" + port + "/metrics");
+    }
+
+    /** Stops the HTTP endpoint, if one was started. */
+    public static void stop() {
+        HttpServer h = http;
+        if (h != null) h.stop(0);
+        http = null;
+    }
+
+    // every snapshot() entry as a read-only long attribute
+    private static final class Bean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Long v = snapshot().get(attribute);
+            if (v == null) throw new AttributeNotFoundException(attribute);
+            return v;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Long> m = snapshot();
+            AttributeList list = new AttributeList();
+            for (String a : attributes) {
+                if (m.containsKey(a)) list.add(new Attribute(a, m.get(a)));
+            }
+            return list;
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            MBeanAttributeInfo[] attrs = snapshot().keySet().stream()
+                    .map(k -> new MBeanAttributeInfo(k, "long", k, true, false, false))
+                    .toArray(MBeanAttributeInfo[]::new);
+            return new MBeanInfo(Metrics.class.getName(), "DistrDigitNet pipeline metrics",
+                    attrs, null, null, null);
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) {
+            throw new UnsupportedOperationException("metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException(actionName);
+        }
+    }
+}
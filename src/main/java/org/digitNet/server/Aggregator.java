@@ -0,0 +1,201 @@
+package org.digitNet.server;
+
+import org.digitNet.metrics.Metrics;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single writer of the global params.
+ *
+ * Handlers post worker updates to a lock-free queue; one thread drains whatever has
+ * piled up and merges it as one sample-weighted FedAvg step:
+ *
+ *   θ ← (1 − η)·θ + η·Σ (n_i / Σn)·θ_i
+ *
+ * which for a single update is the old θ ← θ − η(θ − θ_i). All arithmetic is in place
+ * on θ and one reused accumulator. After each batch a read-only copy of θ is published,
+ * and handlers broadcast that instead of reading θ mid-update.
+ *
+ * Each update names the version it was trained from. With the StalenessPolicy, updates
+ * too many versions behind are rejected, and the rest get their weight scaled by s_i:
+ *
+ *   c_i = s_i·n_i / Σn,   θ ← (1 − η·Σc)·θ + η·Σ c_i·θ_i
+ *
+ * so stale updates pull θ less instead of just shifting weight between updates.
+ */
+public class Aggregator implements AutoCloseable {
+    private static final int MAX_BATCH = 64;
+
+    /** Immutable params published after a batch; version counts merged batches. */
+    public static final class Snapshot {
+        public final long version;
+        public final INDArray params; // never written after publication
+
+        Snapshot(long version, INDArray params) {
+            this.version = version;
+            this.params  = params;
+        }
+    }
+
+    private static final class Update {
+        final INDArray params;
+        final long samples;
+        final long baseVersion;
+        final boolean admitted; // cleared by admits() up front: merged however stale it got since
+        final CompletableFuture<Void> applied = new CompletableFuture<>();
+
+        Update(INDArray params, long samples, long baseVersion, boolean admitted) {
+            this.params      = params;
+            this.samples     = samples;
+            this.baseVersion = baseVersion;
+            this.admitted    = admitted;
+        }
+    }
+
+    private final INDArray global;          // the live model params, only touched by our thread
+    private final INDArray acc;             // weighted sum of a batch
+    private final double learningRate;
+    private final StalenessPolicy staleness;
+    private final ConcurrentLinkedQueue<Update> queue = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile Snapshot snapshot;
+    private final AtomicLong rejected = new AtomicLong();
+
+    public Aggregator(INDArray global, double learningRate) {
+        this(global, learningRate, StalenessPolicy.NONE);
+    }
+
+    public Aggregator(INDArray global, double learningRate, StalenessPolicy staleness) {
+        this.global       = global;
+        this.acc          = Nd4j.createUninitialized(global.dataType(), global.shape(), 'c');
+        this.learningRate = learningRate;
+        this.staleness    = staleness;
+        this.snapshot     = new Snapshot(0, global.dup());
+        this.thread       = new Thread(this::loop, "aggregator");
+        this.thread.start();
+    }
+
+    /** Latest published params; safe to read from any thread. */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /** Updates dropped so far for being too stale. */
+    public long rejectedUpdates() {
+        return rejected.get();
+    }
+
+    /**
+     * Queues a worker's trained params, weighted by the number of samples it trained on.
+     * baseVersion is the snapshot version the worker started from. The returned future
+     * completes once they are merged, exceptionally with StaleUpdateException if they were
+     * too stale (or with the error if merging failed); after that the caller may reuse
+     * the params buffer.
+     */
+    public CompletableFuture<Void> post(INDArray params, long samples, long baseVersion) {
+        return post(params, samples, baseVersion, false);
+    }
+
+    /**
+     * Whether an update trained from baseVersion is recent enough to merge right now;
+     * counted as rejected if not. Lets a worker whose update spans several partitions
+     * decide once for all of them, then post with admitted=true everywhere.
+     */
+    public boolean admits(long baseVersion) {
+        if (staleness.accepts(snapshot.version - baseVersion)) return true;
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    /** As post(), but admitted updates are never rejected, only down-weighted. */
+    public CompletableFuture<Void> post(INDArray params, long samples, long baseVersion, boolean admitted) {
+        Update u = new Update(params, samples, baseVersion, admitted);
+        queue.offer(u);
+        LockSupport.unpark(thread);
+        return u.applied;
+    }
+
+    private void loop() {
+        List<Update> batch = new ArrayList<>(MAX_BATCH);
+        while (running || !queue.isEmpty()) {
+            Update u;
+            while (batch.size() < MAX_BATCH && (u = queue.poll()) != null) batch.add(u);
+            if (batch.isEmpty()) {
+                LockSupport.park(this);
+                continue;
+            }
+            merge(batch);
+            batch.clear();
+        }
+    }
+
+    private void merge(List<Update> batch) {
+        long version = snapshot.version;
+        long totalSamples = 0;
+        for (Update u : batch) {
+            long s = version - u.baseVersion;
+            if (!u.admitted && !staleness.accepts(s)) {
+                rejected.incrementAndGet();
+                u.applied.completeExceptionally(new StaleUpdateException(s));
+            } else {
+                totalSamples += u.samples;
+            }
+        }
+        if (totalSamples == 0) {
+            for (Update u : batch) u.applied.complete(null); // no-op unless already rejected
+            return;
+        }
+
+        long t0 = System.nanoTime();
+        try {
+            acc.assign(0);
+            double sum = 0;
+            for (Update u : batch) {
+                if (u.applied.isDone()) continue; // rejected
+                double c = staleness.weight(version - u.baseVersion) * u.samples / totalSamples;
+                Nd4j.getBlasWrapper().level1().axpy(acc.length(), c, u.params, acc); // acc += c·θ_i
+                sum += c;
+            }
+            global.muli(1.0 - learningRate * sum).addi(acc.muli(learningRate));
+            snapshot = new Snapshot(version + 1, global.dup());
+            Metrics.AGGREGATE.record(System.nanoTime() - t0);
+        } catch (RuntimeException e) {
+            System.err.println("Aggregation failed for " + batch.size() + " updates: " + e.getMessage());
+            for (Update u : batch) u.applied.completeExceptionally(e);
+            return;
+        }
+        for (Update u : batch) u.applied.complete(null);
+    }
+
+    /** An update trained from params more versions behind than the policy allows. */
+    public static final class StaleUpdateException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public final long staleness;
+
+        StaleUpdateException(long staleness) {
+            super("update is " + staleness + " versions stale");
+            this.staleness = staleness;
+        }
+    }
+
+    /** Merges whatever is still queued, then stops the thread. Interrupted, it stops waiting but keeps the flag. */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
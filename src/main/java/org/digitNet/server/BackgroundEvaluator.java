@@ -0,0 +1,63 @@
+package org.digitNet.server;
+
+import org.digitNet.evaluator.ParallelEvaluator;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scores the global params on the test set every everyShards merged shards, on its own
+ * threads. Like Checkpointer, params must hand back an array that is never written
+ * again (a published snapshot), so training goes on while it is evaluated. If an
+ * evaluation takes longer than everyShards shards, the next one starts from whatever
+ * the params are once it is done rather than queueing up.
+ */
+public class BackgroundEvaluator implements AutoCloseable {
+    private final ParallelEvaluator evaluator;
+    private final int everyShards;
+    private final AtomicInteger shardsDone;
+    private final Callable<INDArray> params;
+    private final ScheduledExecutorService timer;
+    private int lastShards;
+
+    public BackgroundEvaluator(ParallelEvaluator evaluator, int everyShards, AtomicInteger shardsDone,
+                               Callable<INDArray> params) {
+        this.evaluator   = evaluator;
+        this.everyShards = everyShards;
+        this.shardsDone  = shardsDone;
+        this.params      = params;
+        this.lastShards  = shardsDone.get();
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "background-eval");
+            t.setDaemon(true);
+            return t;
+        });
+        if (everyShards > 0) timer.scheduleWithFixedDelay(this::tick, 1, 1, TimeUnit.SECONDS);
+    }
+
+    private void tick() {
+        int done = shardsDone.get();
+        if (done - lastShards < everyShards) return;
+        lastShards = done;
+        try {
+            ParallelEvaluator.Result r = evaluator.evaluate(params.call());
+            System.out.printf("[eval] after %d shards: accuracy %.4f, f1 %.4f; %s%n",
+                    done, r.eval.accuracy(), r.eval.f1(), r.summary());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Background evaluation failed: " + e);
+        }
+    }
+
+    /** Stops scheduling; an evaluation in progress is abandoned. */
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        evaluator.close();
+    }
+}
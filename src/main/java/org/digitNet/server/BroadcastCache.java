@@ -0,0 +1,162 @@
+package org.digitNet.server;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.digitNet.codec.UpdateCodec;
+import org.digitNet.codec.UpdateCodecs;
+import org.digitNet.metrics.Metrics;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Encoded params broadcasts shared by all ClientHandlers. A broadcast is fully determined
+ * by the codec spec, the snapshot version and what the worker already holds, so it is
+ * encoded once per (spec, version, reference) and every handler writes the same read-only
+ * byte[] to its socket. Each spec is its own variant (e.g. fp16 next to delta).
+ *
+ * The reference a worker holds is the mirror of an earlier entry (what decoding that
+ * broadcast gives), identified by the entry's id. Workers that received the same
+ * broadcasts therefore share entries and mirrors, whatever order they connected in.
+ *
+ * Entries of older versions are dropped once no send is using them; a handler keeps its
+ * worker's last entry itself, so its mirror stays valid as a reference after eviction.
+ * Raw-tensor codecs (full) don't come through here: they write the snapshot itself.
+ */
+public class BroadcastCache {
+    /** One encoded broadcast; raw and mirror are never written after fill(). */
+    public static final class Entry {
+        final long id, version;
+        private final Key key;
+        private final ReentrantLock fillLock = new ReentrantLock();
+        private volatile byte[] raw;
+        private INDArray mirror; // what the worker decodes; null if the codec ignores references
+        private int refs;        // in-flight sends, guarded by the cache lock
+
+        private Entry(long id, Key key) {
+            this.id = id;
+            this.version = key.version;
+            this.key = key;
+        }
+
+        public byte[] raw() {
+            return raw;
+        }
+
+        public INDArray mirror() {
+            return mirror;
+        }
+    }
+
+    private record Key(String spec, long version, long baseId) {}
+
+    private final MultiLayerNetwork model;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Key, Entry> entries = new HashMap<>();
+    private final Map<String, UpdateCodec> codecs = new ConcurrentHashMap<>(); // stateless server side
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicLong encodes = new AtomicLong(), hits = new AtomicLong();
+    private long newest = -1;
+
+    public BroadcastCache(MultiLayerNetwork model) {
+        this.model = model;
+        Metrics.gauge("broadcast.cached", this::size);
+        Metrics.gauge("broadcast.encodes", encodes::get);
+        Metrics.gauge("broadcast.hits", hits::get);
+    }
+
+    /**
+     * The broadcast of snapshot params (model version) for a worker that holds base's
+     * mirror (null: holds nothing yet), encoded now unless another handler already did.
+     * Must be paired with release() once it has been written.
+     */
+    public Entry acquire(String spec, long version, INDArray params, Entry base) {
+        UpdateCodec codec = codecs.computeIfAbsent(spec, s -> UpdateCodecs.create(s, model, false));
+        Key key = new Key(spec, version, base != null && codec.needsReference() ? base.id : -1);
+        Entry e;
+        lock.lock();
+        try {
+            e = entries.get(key);
+            if (e == null) {
+                e = new Entry(ids.incrementAndGet(), key);
+                entries.put(key, e);
+            }
+            e.refs++;
+            if (version > newest) {
+                newest = version;
+                evict();
+            }
+        } finally {
+            lock.unlock();
+        }
+        try {
+            fill(e, codec, params, base);
+        } catch (RuntimeException ex) {
+            release(e);
+            throw ex;
+        }
+        return e;
+    }
+
+    public void release(Entry e) {
+        lock.lock();
+        try {
+            e.refs--;
+            if (e.refs == 0 && e.version < newest) entries.remove(e.key, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return encodes.get() + " encoded, " + hits.get() + " reused";
+    }
+
+    // encodes on first use; handlers asking for the same entry meanwhile wait for it
+    private void fill(Entry e, UpdateCodec codec, INDArray params, Entry base) {
+        if (e.raw != null) {
+            hits.incrementAndGet();
+            return;
+        }
+        e.fillLock.lock();
+        try {
+            if (e.raw != null) {
+                hits.incrementAndGet();
+                return;
+            }
+            INDArray reference = base != null ? base.mirror : null;
+            long t0 = System.nanoTime();
+            byte[] raw = codec.encode(params, reference);
+            // the mirror counts as part of producing the broadcast
+            e.mirror = codec.needsReference() ? codec.decode(raw, reference) : null;
+            Metrics.SERIALIZE.record(System.nanoTime() - t0);
+            encodes.incrementAndGet();
+            e.raw = raw; // volatile write publishes mirror too
+        } finally {
+            e.fillLock.unlock();
+        }
+    }
+
+    // drops unused entries of versions before the newest (lock held)
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            if (e.refs == 0 && e.version < newest) it.remove();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.digitNet.server;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Everything a restarted ParameterServer needs to carry on: the global params, the
+ * ShardManager's round and pending shards, and the shards-done counter for progress.
+ * The model config isn't stored, it is rebuilt from the command line.
+ *
+ * Written to a temp file and moved over the old one, so a crash mid-write leaves the
+ * previous checkpoint intact.
+ */
+public final class Checkpoint {
+    private static final int MAGIC  = 0x444E4350; // "DNCP"
+    private static final int FORMAT = 1;
+
+    public final ShardManager.State shards;
+    public final int shardsDone;
+    public final INDArray params;
+
+    public Checkpoint(ShardManager.State shards, int shardsDone, INDArray params) {
+        this.shards     = shards;
+        this.shardsDone = shardsDone;
+        this.params     = params;
+    }
+
+    public void write(File file) throws IOException {
+        File tmp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            ShardManager.State s = shards;
+            out.writeBoolean(s.adaptive);
+            out.writeInt(s.totalSamples);
+            out.writeInt(s.numRounds);
+            out.writeInt(s.round);
+            out.writeInt(s.doneThisRound);
+            out.writeLong(s.samplesDone);
+            out.writeInt(s.cursor);
+            out.writeInt(s.rotation);
+            out.writeInt(s.nextId);
+            out.writeBoolean(s.finished);
+            out.writeInt(s.pending.length);
+            for (int[] p : s.pending) {
+                out.writeInt(p[0]);
+                out.writeInt(p[1]);
+                out.writeInt(p[2]);
+            }
+            out.writeInt(shardsDone);
+            Nd4j.write(params, out);
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static Checkpoint read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IOException(file + " is not a checkpoint");
+            int format = in.readInt();
+            if (format != FORMAT) throw new IOException("Unsupported checkpoint format " + format);
+            boolean adaptive = in.readBoolean();
+            int totalSamples = in.readInt();
+            int numRounds = in.readInt();
+            int round = in.readInt();
+            int doneThisRound = in.readInt();
+            long samplesDone = in.readLong();
+            int cursor = in.readInt();
+            int rotation = in.readInt();
+            int nextId = in.readInt();
+            boolean finished = in.readBoolean();
+            int[][] pending = new int[in.readInt()][];
+            for (int i = 0; i < pending.length; i++) {
+                pending[i] = new int[] { in.readInt(), in.readInt(), in.readInt() };
+            }
+            ShardManager.State s = new ShardManager.State(adaptive, totalSamples, numRounds, round,
+                    doneThisRound, samplesDone, cursor, rotation, nextId, finished, pending);
+            int shardsDone = in.readInt();
+            INDArray params = Nd4j.read(in);
+            return new Checkpoint(s, shardsDone, params);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.digitNet.server;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes a Checkpoint every everyShards merged shards or every everySec seconds, whichever
+ * comes first, on its own thread.
+ *
+ * params must return an array nobody writes to anymore (e.g. the aggregator's published
+ * snapshot), so taking a checkpoint never holds up merging. The shard state is read
+ * before the params: a shard merged in between is then in both the params and the
+ * pending list and gets trained once more after a resume, instead of being lost.
+ */
+public class Checkpointer implements AutoCloseable {
+    private final File file;
+    private final int everyShards;      // 0: no shard trigger
+    private final long everyNanos;      // 0: no time trigger
+    private final ShardManager shardManager;
+    private final AtomicInteger shardsDone;
+    private final Callable<INDArray> params;
+    private final ScheduledExecutorService timer;
+
+    private int lastShards;
+    private long lastNanos = System.nanoTime();
+
+    public Checkpointer(File file, int everyShards, double everySec, ShardManager shardManager,
+                        AtomicInteger shardsDone, Callable<INDArray> params) {
+        this.file         = file;
+        this.everyShards  = everyShards;
+        this.everyNanos   = (long) (everySec * 1e9);
+        this.shardManager = shardManager;
+        this.shardsDone   = shardsDone;
+        this.params       = params;
+        this.lastShards   = shardsDone.get();
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "checkpointer");
+            t.setDaemon(true);
+            return t;
+        });
+        if (everyShards > 0 || everyNanos > 0) {
+            timer.scheduleWithFixedDelay(this::tick, 1, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    private void tick() {
+        int done = shardsDone.get();
+        if (done == lastShards) return; // nothing new since the last one
+        boolean due = (everyShards > 0 && done - lastShards >= everyShards)
+                || (everyNanos > 0 && System.nanoTime() - lastNanos >= everyNanos);
+        if (due) save();
+    }
+
+    private void save() {
+        long t0 = System.nanoTime();
+        try {
+            ShardManager.State state = shardManager.checkpointState();
+            int done = shardsDone.get();
+            new Checkpoint(state, done, params.call()).write(file);
+            lastShards = done;
+            lastNanos = System.nanoTime();
+            System.out.printf("[checkpoint] round %d, %d shards done, %d pending; written to %s in %d ms%n",
+                    state.round, done, state.pending.length, file, (lastNanos - t0) / 1_000_000);
+        } catch (Exception e) {
+            System.err.println("Checkpoint failed: " + e);
+        }
+    }
+
+    /** Stops the timer, letting a checkpoint being written finish unless interrupted (the flag is kept). */
+    @Override
+    public void close() {
+        timer.shutdown();
+        try {
+            timer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,7 +1,14 @@
 package org.digitNet.server;
 
 import org.digitNet.DataShard;
-import org.digitNet.SerializationUtil;
+import org.digitNet.IDXLabelReader;
+import org.digitNet.ShardCache;
+import org.digitNet.ShardStore;
+import org.digitNet.TensorChannel;
+import org.digitNet.codec.FullCodec;
+import org.digitNet.codec.UpdateCodec;
+import org.digitNet.codec.UpdateCodecs;
+import org.digitNet.metrics.Metrics;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
@@ -9,41 +16,82 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
 
 public class ClientHandler implements Runnable {
     private final Socket socket;
     private final ShardManager shardManager;
-    private final MultiLayerNetwork model;
-    private final double learningRate;
+    private final MultiLayerNetwork model; // config + layer layout only; params live in the aggregator
+    private final Aggregator aggregator;   // null when the params live on partition servers
+    private final PartitionTable partitions;
     private final int localEpochs, batchSize, totalShards;
     private final AtomicInteger shardsDone;
+    private final IntFunction<ShardSizer> sizers; // worker capacity → its sizer; null unless shards are carved
+    private ShardSizer sizer;
+    private final ShardStore store;        // null: normalize shard data from the IDX files per dispatch
+    private boolean stream;                // send shard data as SHARD_STREAM chunks
+    private final BroadcastCache broadcasts; // encoded params, shared with the other handlers
+    private BroadcastCache.Entry workerBroadcast; // last one sent; its mirror is the worker's reference
+    private long lastResultNanos;
+
+    // A shard lease the worker holds, with the params it was sent (reference for delta
+    // updates) and the model version those params are
+    private static final class Dispatch {
+        final ShardManager.Lease lease;
+        final DataShard shard;
+        final long sentNanos = System.nanoTime();
+        INDArray sentParams;
+        long sentVersion;
+
+        Dispatch(ShardManager.Lease lease) {
+            this.lease = lease;
+            this.shard = lease.shard;
+        }
+    }
 
     public ClientHandler(
             Socket socket,
             ShardManager shardManager,
             MultiLayerNetwork model,
-            double learningRate,
+            Aggregator aggregator,
+            PartitionTable partitions,
             int localEpochs,
             int batchSize,
             AtomicInteger shardsDone,
-            int totalShards
+            int totalShards,
+            IntFunction<ShardSizer> sizers,
+            ShardStore store,
+            BroadcastCache broadcasts
     ) {
         this.socket = socket;
         this.shardManager = shardManager;
         this.model = model;
-        this.learningRate = learningRate;
+        this.aggregator = aggregator;
+        this.partitions = partitions;
         this.localEpochs = localEpochs;
         this.batchSize = batchSize;
         this.shardsDone = shardsDone;
         this.totalShards = totalShards;
+        this.sizers = sizers;
+        this.store = store;
+        this.broadcasts = broadcasts;
     }
 
     @Override
     public void run() {
+        // shards this worker holds, oldest first; it trains and answers in this order
+        ArrayDeque<Dispatch> outstanding = new ArrayDeque<>();
         try (DataOutputStream out = new DataOutputStream(socket.getOutputStream());
              DataInputStream  in  = new DataInputStream(socket.getInputStream()))
         {
+            // tensors bypass the streams and go straight between off-heap buffers and the socket
+            TensorChannel tensors = new TensorChannel(socket.getChannel());
+
+            out.writeInt(MessageType.ACCEPTED.code);
+
             // Handshake: send model JSON
             byte[] js = model.getLayerWiseConfigurations().toJson()
                     .getBytes(StandardCharsets.UTF_8);
@@ -54,48 +102,234 @@ public class ClientHandler implements Runnable {
             out.writeInt(batchSize);
             out.flush();
 
-            // Loop: serve shards
+            // worker replies with its shard cache budget; mirror its LRU (sizes only)
+            long cacheBudget = in.readLong();
+            ShardCache<Boolean> workerCache = new ShardCache<>(cacheBudget);
+
+            // codec negotiation: worker asks for a spec, we answer with the one we'll use
+            UpdateCodec codec = negotiateCodec(in.readUTF());
+            // prefetch: the worker may hold this many shards beyond the one it trains on
+            int window = 1 + Math.max(0, in.readInt());
+            // capacity: model replicas the worker trains in parallel; carved shards start that much larger
+            int capacity = Math.max(1, in.readInt());
+            sizer = sizers != null ? sizers.apply(capacity) : null;
+            if (capacity > 1) System.out.printf("Worker %s trains on %d replicas%n", socket.getRemoteSocketAddress(), capacity);
+            // stream: the worker wants shard data per mini-batch so it can train while it arrives
+            stream = in.readBoolean();
+            out.writeUTF(codec.spec());
+            // where the params live; empty means "from this connection"
+            partitions.write(out);
+            out.flush();
+            INDArray workerParams = null; // what the worker holds after our last broadcast
+            long workerVersion = -1;      // model version of that broadcast
+            CompletableFuture<Void> lastMerge = CompletableFuture.completedFuture(null);
+
+            // Loop: keep the worker's window full, then collect the oldest update
             while (true) {
-                DataShard shard = shardManager.nextShard();
-                if (shard == null) {
+                while (outstanding.size() < window) {
+                    // only block for work when the worker has nothing left to train,
+                    // otherwise our own outstanding updates could hold up the round
+                    int want = sizer != null ? sizer.next() : 0;
+                    ShardManager.Lease lease = outstanding.isEmpty()
+                            ? shardManager.nextShard(this, want)
+                            : shardManager.tryNextShard(this, want);
+                    if (lease == null) break;
+                    Dispatch d = new Dispatch(lease);
+                    outstanding.addLast(d); // tracked first so a failed send still requeues it
+                    Aggregator.Snapshot snap = partitions.isEmpty() ? aggregator.snapshot() : null;
+                    workerParams = dispatch(lease, codec, snap, workerVersion, workerParams,
+                            workerCache, out, tensors);
+                    if (snap != null) workerVersion = snap.version;
+                    d.sentParams  = workerParams;
+                    d.sentVersion = workerVersion;
+                }
+                if (outstanding.isEmpty()) {
                     out.writeInt(MessageType.NO_MORE_SHARDS.code);
                     out.flush();
                     break;
                 }
-                int done = shardsDone.incrementAndGet();
-                System.out.printf("→ [%d/%d] dispatching shard%n", done, totalShards);
 
-                // tell client
-                out.writeInt(MessageType.SHARD_DATA.code);
-                // send params, features, labels
-                sendArray(model.params(),        out, false);
-                sendArray(shard.getFeatures(),   out, false);
-                sendArray(shard.getLabels(),     out, false);
-                out.flush();
+                Dispatch d = outstanding.peekFirst();
+                if (!partitions.isEmpty()) {
+                    // the worker claims the shard before pushing, so only one copy ever reaches
+                    // the partition servers; then it pushed to all of them, or to none because
+                    // one found it too stale
+                    int code = in.readInt();
+                    if (code != MessageType.PARTITIONS_COMMIT.code) {
+                        throw new IllegalStateException("Unexpected code: " + code);
+                    }
+                    boolean granted = shardManager.commit(d.lease);
+                    out.writeInt(MessageType.COMMIT_REPLY.code);
+                    out.writeBoolean(granted);
+                    out.flush();
+                    if (!granted) {
+                        measure(d);
+                        outstanding.pollFirst();
+                        System.out.printf("Shard %d already merged from another worker; discarding%n", d.shard.getId());
+                        continue;
+                    }
+                    code = in.readInt();
+                    measure(d);
+                    outstanding.pollFirst();
+                    if (code == MessageType.PARTITIONS_REJECTED.code) {
+                        System.out.printf("Shard %d update too stale for the partitions; retraining%n", d.shard.getId());
+                        shardManager.requeue(d.lease);
+                    } else if (code == MessageType.PARTITIONS_PUSHED.code) {
+                        shardsDone.incrementAndGet();
+                        shardManager.complete(d.lease);
+                    } else {
+                        throw new IllegalStateException("Unexpected code: " + code);
+                    }
+                    continue;
+                }
 
                 // receive updated params
-                int len = in.readInt();
-                byte[] buf = new byte[len];
-                in.readFully(buf);
-                INDArray updated = SerializationUtil.fromBytes(buf);
-
-                // apply federated update θ ← θ − η(θ − θ_client)
-                synchronized(model) {
-                    INDArray delta = model.params().sub(updated).mul(learningRate);
-                    model.params().subi(delta);
+                INDArray updated;
+                if (codec.sendsRawTensor()) {
+                    lastMerge.join(); // previous update must be merged before its buffer is reused
+                    updated = tensors.readPooled();
+                } else {
+                    int len = in.readInt();
+                    byte[] buf = new byte[len];
+                    long t0 = System.nanoTime();
+                    in.readFully(buf);
+                    long t1 = System.nanoTime();
+                    updated = codec.decode(buf, d.sentParams);
+                    Metrics.RECEIVE.record(t1 - t0);
+                    Metrics.DESERIALIZE.record(System.nanoTime() - t1);
+                    Metrics.BYTES_IN.addAndGet(4 + len);
                 }
+
+                // first result for a shard wins; a late duplicate (speculation, expired lease) is dropped
+                measure(d);
+                outstanding.pollFirst();
+                if (!shardManager.commit(d.lease)) {
+                    System.out.printf("Shard %d already merged from another worker; discarding%n", d.shard.getId());
+                    continue;
+                }
+
+                // hand off to the aggregator; the shard only counts as done once merged,
+                // and goes back in the queue if its update was too stale to merge
+                lastMerge = aggregator.post(updated, d.shard.numSamples(), d.sentVersion).handle((v, err) -> {
+                    if (err == null) {
+                        shardsDone.incrementAndGet();
+                        shardManager.complete(d.lease);
+                    } else {
+                        if (err.getCause() instanceof Aggregator.StaleUpdateException se) {
+                            System.out.printf("Shard %d update %d versions stale; retraining%n",
+                                    d.shard.getId(), se.staleness);
+                        }
+                        shardManager.requeue(d.lease);
+                    }
+                    return null;
+                });
             }
         } catch (Exception e) {
-            System.err.println("ClientHandler error: " + e.getMessage());
+            System.err.println("ClientHandler error: " + e);
+            for (Dispatch d : outstanding) shardManager.requeue(d.lease);
+        }
+    }
+
+    // feeds the worker's throughput for this result to the sizer; the clock starts at the
+    // dispatch or at the previous result, whichever is later, so queueing behind prefetched
+    // shards isn't counted as slowness
+    private void measure(Dispatch d) {
+        long now = System.nanoTime();
+        if (sizer != null) sizer.observe(d.shard.numSamples(), now - Math.max(d.sentNanos, lastResultNanos));
+        lastResultNanos = now;
+    }
+
+    // sends one shard (params first, then data unless the worker has it cached);
+    // returns what the worker holds as params afterwards
+    private INDArray dispatch(ShardManager.Lease lease, UpdateCodec codec,
+                              Aggregator.Snapshot snap, long workerVersion, INDArray workerParams,
+                              ShardCache<Boolean> workerCache,
+                              DataOutputStream out, TensorChannel tensors) throws Exception {
+        DataShard shard = lease.shard;
+        boolean cached = workerCache.get(shard.getId()) != null;
+        if (sizer != null) {
+            System.out.printf("→ [%d done] dispatching shard %d: %d samples (worker at %.0f samples/s)%s%s%n",
+                    shardsDone.get(), shard.getId(), shard.numSamples(), sizer.samplesPerSec(),
+                    lease.speculative ? " (speculative)" : "", cached ? " (cached)" : "");
+        } else {
+            System.out.printf("→ [%d/%d done] dispatching shard %d%s%s%n",
+                    shardsDone.get(), totalShards, shard.getId(),
+                    lease.speculative ? " (speculative)" : "", cached ? " (cached)" : "");
+        }
+
+        // tell client
+        out.writeInt(cached ? MessageType.SHARD_CACHED.code
+                : stream ? MessageType.SHARD_STREAM.code : MessageType.SHARD_DATA.code);
+        out.writeInt(shard.getId());
+        // model version, then params unless the worker already holds that version
+        // (or pulls them from the partitions), then (unless cached) features and labels
+        boolean sendParams = snap != null && snap.version != workerVersion;
+        out.writeLong(snap != null ? snap.version : 0);
+        out.writeBoolean(sendParams);
+        if (sendParams) {
+            workerParams = sendParams(codec, snap, out, tensors);
+        }
+        if (!cached) {
+            long bytes;
+            if (stream)             bytes = sendChunks(shard, out, tensors);
+            else if (store != null) bytes = store.send(shard, tensors); // preprocessed rows, file → socket
+            else                    bytes = tensors.writeTensor(shard.getFeatures()) + tensors.writeTensor(shard.getLabels());
+            workerCache.put(shard.getId(), Boolean.TRUE, bytes);
+        }
+        out.flush();
+        return workerParams;
+    }
+
+    // SHARD_STREAM body: shape, then features and labels of each batchSize rows in turn, so
+    // the worker's first batch is in after one chunk however large the shard is
+    private long sendChunks(DataShard shard, DataOutputStream out, TensorChannel tensors) throws Exception {
+        int n = shard.numSamples();
+        out.writeInt(n);
+        out.writeInt(shard.numFeatures());
+        out.writeInt(IDXLabelReader.NUM_CLASSES);
+        long bytes = 0;
+        for (int from = 0; from < n; from += batchSize) {
+            int to = Math.min(from + batchSize, n);
+            bytes += store != null
+                    ? store.send(shard, from, to, tensors)
+                    : tensors.writeTensor(shard.getFeatures(from, to)) + tensors.writeTensor(shard.getLabels(from, to));
+        }
+        return bytes;
+    }
+
+    private UpdateCodec negotiateCodec(String requested) {
+        if (!partitions.isEmpty()) {
+            return new FullCodec(); // partition servers exchange raw tensor slices
+        }
+        try {
+            return UpdateCodecs.create(requested, model, false);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Worker asked for unsupported codec '" + requested + "', using full");
+            return new FullCodec();
         }
     }
 
-    private void sendArray(INDArray arr,
-                           DataOutputStream out,
-                           boolean flush) throws Exception {
-        byte[] raw = SerializationUtil.toBytes(arr);
-        out.writeInt(raw.length);
-        out.write(raw);
-        if (flush) out.flush();
+    // sends the latest params snapshot (possibly as a delta against what the worker already has);
+    // returns what the worker holds afterwards
+    private INDArray sendParams(UpdateCodec codec, Aggregator.Snapshot snap,
+                                DataOutputStream out, TensorChannel tensors) throws Exception {
+        if (codec.sendsRawTensor()) {
+            tensors.writeTensor(snap.params);
+            return null;
+        }
+        // encoded once for every worker that holds the same reference
+        BroadcastCache.Entry b = broadcasts.acquire(codec.spec(), snap.version, snap.params, workerBroadcast);
+        try {
+            byte[] raw = b.raw();
+            long t0 = System.nanoTime();
+            out.writeInt(raw.length);
+            tensors.writeBytes(raw); // not out.write: it would pin this thread while the worker is slow to read
+            Metrics.SEND.record(System.nanoTime() - t0);
+            Metrics.BYTES_OUT.addAndGet(4 + raw.length);
+        } finally {
+            broadcasts.release(b);
+        }
+        workerBroadcast = b;
+        return b.mirror();
     }
 }
@@ -0,0 +1,137 @@
+package org.digitNet.server;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Accepts worker connections on one thread and runs each handler on its own virtual
+ * thread, so thousands of mostly-idle workers cost no platform threads.
+ *
+ * At most maxWorkers connections are served at once. Anyone beyond that is sent
+ * SERVER_BUSY and closed immediately (the worker backs off and retries), so a burst
+ * of connections can't grow memory without bound.
+ */
+public class ConnectionAcceptor implements AutoCloseable {
+    private static final int BACKLOG = 1024;
+    private static final long DRAIN_GRACE_SEC = 10; // then stalled connections are cut
+
+    private final ServerSocketChannel serverChannel;
+    private final Semaphore slots;
+    private final Function<Socket, Runnable> handlerFactory;
+    private final ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger active   = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+    private final Set<Socket> open = ConcurrentHashMap.newKeySet();
+    private final Thread acceptThread;
+
+    public ConnectionAcceptor(int port, int maxWorkers,
+                              Function<Socket, Runnable> handlerFactory) throws IOException {
+        this.serverChannel  = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(port), BACKLOG);
+        this.slots          = new Semaphore(maxWorkers);
+        this.handlerFactory = handlerFactory;
+        this.acceptThread   = new Thread(this::acceptLoop, "acceptor");
+    }
+
+    public void start() {
+        acceptThread.start();
+    }
+
+    public int activeConnections() {
+        return active.get();
+    }
+
+    public int rejectedConnections() {
+        return rejected.get();
+    }
+
+    private void acceptLoop() {
+        while (serverChannel.isOpen()) {
+            SocketChannel ch;
+            try {
+                ch = serverChannel.accept(); // blocks; close() wakes it up
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                System.err.println("Accept error: " + e.getMessage());
+                continue;
+            }
+
+            Socket socket = ch.socket();
+            try {
+                socket.setTcpNoDelay(true); // control ints must not wait for Nagle
+            } catch (IOException ignored) {
+            }
+
+            if (!slots.tryAcquire()) {
+                rejected.incrementAndGet();
+                reject(socket);
+                continue;
+            }
+            active.incrementAndGet();
+            open.add(socket);
+            handlers.submit(() -> {
+                try {
+                    handlerFactory.apply(socket).run();
+                } finally {
+                    open.remove(socket);
+                    active.decrementAndGet();
+                    slots.release();
+                }
+            });
+        }
+    }
+
+    private void reject(Socket socket) {
+        try (socket; DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
+            out.writeInt(MessageType.SERVER_BUSY.code);
+            out.flush();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Stops accepting and waits for the running handlers to finish. Connections still
+     * open after a grace period (a stalled worker whose shards were done by others)
+     * are closed so their handlers bail out.
+     */
+    @Override
+    public void close() throws IOException {
+        serverChannel.close();
+        try {
+            acceptThread.join();
+            handlers.shutdown();
+            if (!handlers.awaitTermination(DRAIN_GRACE_SEC, TimeUnit.SECONDS)) {
+                System.out.printf("Closing %d stalled connections%n", open.size());
+                closeOpen();
+            }
+            handlers.awaitTermination(1, TimeUnit.HOURS);
+        } catch (InterruptedException e) {
+            // stop waiting: cut every connection so the handlers bail out, keep the flag for the caller
+            closeOpen();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void closeOpen() {
+        for (Socket s : open) {
+            try {
+                s.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
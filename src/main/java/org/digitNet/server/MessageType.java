@@ -1,9 +1,39 @@
 package org.digitNet.server;
 
-/** Codes for server→client control messages. */
+/** Codes for control messages (server→client unless noted). */
 public enum MessageType {
-    SHARD_DATA(1),
-    NO_MORE_SHARDS(2);
+    SHARD_DATA(1),     // id + model version + params-follow flag (+ params) + features + labels
+    NO_MORE_SHARDS(2),
+    SHARD_CACHED(3),   // worker already holds the shard: id + model version + params-follow flag (+ params), no data
+    ACCEPTED(4),       // first int on a new connection: handshake follows
+    SERVER_BUSY(5),    // first int on a new connection: at capacity, retry later
+
+    // PartitionServer requests (client→partition) and replies
+    PULL_PARAMS(6),        // long version held; reply: long version + changed flag (+ params tensor)
+    PUSH_UPDATE(7),        // int samples + long base version + params tensor; reply UPDATE_MERGED
+    INIT_PARTITION(8),     // coordinator only: lr + staleness policy + initial params tensor; reply UPDATE_MERGED
+    SHUTDOWN(9),           // coordinator only: stop the partition server
+    UPDATE_MERGED(10),
+
+    PARTITIONS_PUSHED(11), // worker→coordinator: update went to the partition servers
+    STALENESS_CHECK(12),   // client→partition: long base version; reply boolean (false: too stale to merge)
+
+    // InferenceServer (after ACCEPTED the server sends int rows + int cols)
+    INFER(13),             // client→server: int request id + rows*cols uint8 pixels; may be pipelined
+    INFER_RESULT(14),      // int request id + int predicted digit + NUM_CLASSES float probabilities
+
+    // ring mode (RingCoordinator ↔ RingWorker); the worker's handshake reply is cache budget + ring port
+    RING_ASSIGN(15),       // int rank + int size + double lr + UTF next host + int next port + params tensor
+    RING_STEP(16),         // int step + int shard id (-1: none) + data-follows flag (+ features + labels)
+    RING_DONE(17),         // worker→coordinator: int step + int samples trained + double loss
+
+    // like SHARD_DATA, but after the params: int samples + int features + int classes, then
+    // features and labels interleaved per chunk of batchSize rows (for workers that asked to stream)
+    SHARD_STREAM(18),
+
+    PARTITIONS_REJECTED(19), // worker→coordinator: some partition found the update too stale, nothing pushed
+    PARTITIONS_COMMIT(20),   // worker→coordinator: about to push the oldest shard's update
+    COMMIT_REPLY(21);        // coordinator→worker: boolean granted (false: another copy already won, drop it)
 
     public final int code;
     MessageType(int code) { this.code = code; }
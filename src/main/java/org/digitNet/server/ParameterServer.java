@@ -2,45 +2,255 @@ package org.digitNet.server;
 
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
 import org.deeplearning4j.nn.conf.inputs.InputType;
 import org.deeplearning4j.nn.conf.layers.*;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.nn.weights.WeightInit;
 import org.deeplearning4j.util.ModelSerializer;
 import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.learning.config.Adam;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
 
+import org.digitNet.CliOptions;
 import org.digitNet.DataLoader;
 import org.digitNet.DataShard;
+import org.digitNet.IDXFileReader;
+import org.digitNet.IDXLabelReader;
+import org.digitNet.ShardStore;
+import org.digitNet.codec.UpdateCodecs;
+import org.digitNet.evaluator.ParallelEvaluator;
+import org.digitNet.metrics.Metrics;
 import java.io.File;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class ParameterServer {
     public static void main(String[] args) throws Exception {
-        if (args.length != 7) {
+        CliOptions opts = new CliOptions(args);
+        if (opts.size() < 7 || opts.size() > 8) {
             System.err.println(
                     "Usage: ParameterServer <port> <learningRate> <localEpochs> " +
-                            "<batchSize> <numShards> <trainImages> <trainLabels>"
+                            "<batchSize> <numShards> <trainImages> <trainLabels> [numRounds]" +
+                            " [--max-workers=N] [--param-servers=host:port,...] [--partition=range|layer]" +
+                            " [--max-staleness=N] [--staleness-decay=a] [--metrics-port=N]" +
+                            " [--lease-timeout=sec] [--speculate=factor] [--target-sec=T]" +
+                            " [--checkpoint=file] [--checkpoint-every=shards] [--checkpoint-sec=T] [--resume]" +
+                            " [--eval-every=shards --test-images=file --test-labels=file] [--eval-threads=N]" +
+                            " [--shard-store=file] [--ring=N]"
             );
             System.exit(1);
         }
-        int    port        = Integer.parseInt(args[0]);
-        double lr          = Double.parseDouble(args[1]);
-        int    localEpochs = Integer.parseInt(args[2]);
-        int    batchSize   = Integer.parseInt(args[3]);
-        int    numShards   = Integer.parseInt(args[4]);
-        String trainImgs   = args[5];
-        String trainLbls   = args[6];
-
-        // CNN CONFIG
-        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+        int    port        = Integer.parseInt(opts.get(0));
+        double lr          = Double.parseDouble(opts.get(1));
+        int    localEpochs = Integer.parseInt(opts.get(2));
+        int    batchSize   = Integer.parseInt(opts.get(3));
+        int    numShards   = Integer.parseInt(opts.get(4));
+        String trainImgs   = opts.get(5);
+        String trainLbls   = opts.get(6);
+        int    numRounds   = opts.size() > 7 ? Integer.parseInt(opts.get(7)) : 1;
+        int    maxWorkers  = opts.intFlag("max-workers", 1024); // concurrent connections served
+        String paramServers = opts.flag("param-servers", "");   // empty: params held here
+        boolean byLayer    = opts.flag("partition", "range").equals("layer");
+        // updates more than max-staleness versions behind are dropped and their shard retrained
+        // (-1: never); the rest are weighted by (1 + staleness)^-decay
+        StalenessPolicy staleness = new StalenessPolicy(
+                opts.intFlag("max-staleness", -1), opts.doubleFlag("staleness-decay", 0.5));
+        int    metricsPort = opts.intFlag("metrics-port", 0);   // 0: JMX only
+        // a shard not answered within lease-timeout goes back in the queue; once the queue is
+        // empty, shards out for speculate × the median shard time get a second copy (0: off)
+        double leaseTimeout = opts.doubleFlag("lease-timeout", 600);
+        double speculate    = opts.doubleFlag("speculate", 2.0);
+        // > 0: carve shards per worker, sized so each takes about T seconds on that worker
+        // (numShards then only sets the size of a worker's first shard)
+        double targetSec    = opts.doubleFlag("target-sec", 0);
+        // checkpoint every N merged shards and/or T seconds (0: off); --resume starts from it
+        File   ckptFile     = new File(opts.flag("checkpoint", "checkpoint.bin"));
+        int    ckptShards   = opts.intFlag("checkpoint-every", 0);
+        double ckptSec      = opts.doubleFlag("checkpoint-sec", 0);
+        boolean resume      = opts.has("resume");
+        // preprocessed train set (see ShardStore) to send shard data from; empty: from the IDX files
+        String storePath    = opts.flag("shard-store", "");
+        // > 0: only coordinate N RingWorkers, which average among themselves (see RingCoordinator);
+        // no leases, merges or snapshots here then, so the flags for those don't apply
+        int    ringSize     = opts.intFlag("ring", 0);
+        if (ringSize > 0) {
+            for (String f : List.of("target-sec", "param-servers", "partition", "resume", "checkpoint",
+                    "checkpoint-every", "checkpoint-sec", "eval-every", "lease-timeout", "speculate",
+                    "max-staleness", "staleness-decay")) {
+                if (opts.has(f)) {
+                    System.err.println("--ring doesn't combine with --" + f);
+                    System.exit(1);
+                }
+            }
+        }
+        // score a params snapshot on the test set every N merged shards (0: off)
+        int    evalEvery    = opts.intFlag("eval-every", 0);
+        int    evalThreads  = opts.intFlag("eval-threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        if (evalEvery > 0 && (!opts.has("test-images") || !opts.has("test-labels"))) {
+            System.err.println("--eval-every needs --test-images and --test-labels");
+            System.exit(1);
+        }
+
+        MultiLayerConfiguration conf = buildConf(lr);
+
+        MultiLayerNetwork globalModel = new MultiLayerNetwork(conf);
+        globalModel.init();
+
+        Checkpoint restored = null;
+        if (resume && ckptFile.exists()) {
+            restored = Checkpoint.read(ckptFile);
+            globalModel.setParams(restored.params);
+        } else if (resume) {
+            System.out.println("No checkpoint at " + ckptFile + "; starting from scratch");
+        }
+
+        // Pre-shard the dataset, or keep it whole and cut shards on demand
+        List<DataShard> shards = DataLoader.loadShards(trainImgs, trainLbls, targetSec > 0 ? 1 : numShards);
+        int totalSamples = shards.stream().mapToInt(DataShard::numSamples).sum();
+        int defaultSize = Math.max(1, totalSamples / numShards);
+        int totalShards = targetSec > 0 ? -1 : numShards * numRounds;
+        ShardStore store = null;
+        if (!storePath.isEmpty()) {
+            store = ShardStore.open(storePath);
+            // workers get the store's rows, so they must be shaped like the shards we hand out
+            int numFeatures = shards.get(0).numFeatures();
+            if (store.getNumSamples() != totalSamples || store.getImageSize() != numFeatures
+                    || store.getNumClasses() != IDXLabelReader.NUM_CLASSES) {
+                String msg = String.format("%s holds %d samples of %d features and %d classes,"
+                                + " the train set %d samples of %d features and %d classes",
+                        storePath, store.getNumSamples(), store.getImageSize(), store.getNumClasses(),
+                        totalSamples, numFeatures, IDXLabelReader.NUM_CLASSES);
+                store.close();
+                throw new IllegalArgumentException(msg);
+            }
+            System.out.println("Sending shard data from " + storePath);
+        }
+        ShardStore shardStore = store;
+
+        if (ringSize > 0) {
+            new RingCoordinator(port, ringSize, lr, localEpochs, batchSize, shards, numRounds, shardStore)
+                    .run(globalModel);
+            if (store != null) store.close();
+            saveModel(globalModel);
+            return;
+        }
+
+        // params either stay here, merged by a single aggregator thread, or are split
+        // across PartitionServers that workers talk to directly
+        PartitionTable partitions = paramServers.isEmpty()
+                ? PartitionTable.none()
+                : PartitionTable.split(Arrays.asList(paramServers.split(",")),
+                        UpdateCodecs.layerSizes(globalModel), byLayer);
+        ShardManager shardManager = targetSec > 0
+                ? ShardManager.adaptive(shards.get(0), defaultSize, numRounds, leaseTimeout, speculate)
+                : new ShardManager(shards, numRounds, leaseTimeout, speculate);
+        if (restored != null) {
+            shardManager.restore(restored.shards);
+            System.out.printf("Resumed from %s: round %d/%d, %d shards done%n",
+                    ckptFile, shardManager.getRound(), numRounds, restored.shardsDone);
+        }
+        Aggregator aggregator = null;
+        if (partitions.isEmpty()) {
+            aggregator = new Aggregator(globalModel.params(), lr, staleness);
+        } else {
+            initPartitions(partitions, globalModel.params(), lr, staleness);
+        }
+        System.out.println("Staleness policy: " + staleness);
+        Aggregator merger = aggregator;
+
+        // -> clients: one virtual thread per connection, capped at maxWorkers
+        AtomicInteger shardsDone = new AtomicInteger(restored != null ? restored.shardsDone : 0);
+        BroadcastCache broadcasts = new BroadcastCache(globalModel);
+        ConnectionAcceptor acceptor = new ConnectionAcceptor(port, maxWorkers, socket ->
+                new ClientHandler(
+                        socket, shardManager, globalModel, merger, partitions,
+                        localEpochs, batchSize,
+                        shardsDone, totalShards,
+                        targetSec <= 0 ? null
+                                : capacity -> new ShardSizer(targetSec, defaultSize * capacity, batchSize, totalSamples),
+                        shardStore, broadcasts
+                ));
+
+        Metrics.gauge("shards.queued", shardManager::queueDepth);
+        Metrics.gauge("shards.inflight", shardManager::inFlight);
+        Metrics.gauge("shards.done", shardsDone::get);
+        Metrics.gauge("leases.expired", () -> shardManager.leaseStats()[0]);
+        Metrics.gauge("leases.speculated", () -> shardManager.leaseStats()[1]);
+        Metrics.gauge("results.duplicate", () -> shardManager.leaseStats()[2]);
+        Metrics.gauge("workers.connected", acceptor::activeConnections);
+        if (merger != null) {
+            Metrics.gauge("model.version", () -> merger.snapshot().version);
+            Metrics.gauge("updates.stale_dropped", merger::rejectedUpdates);
+        }
+        Metrics.expose(metricsPort);
+
+        // Progress heartbeat
+        ScheduledExecutorService hb = Executors.newSingleThreadScheduledExecutor();
+        hb.scheduleAtFixedRate(() -> {
+            int done = shardsDone.get();
+            String progress = totalShards > 0
+                    ? String.format("%d/%d shards done (%.1f%%), %d remaining",
+                            done, totalShards, 100.0 * done / totalShards, totalShards - done)
+                    : String.format("%d shards done, round %.1f%% through",
+                            done, 100.0 * shardManager.roundProgress());
+            System.out.printf("[heartbeat] round %d/%d, %s, "
+                            + "%d workers connected, %d turned away, model v%d, %d stale updates dropped%n",
+                    shardManager.getRound(), numRounds, progress,
+                    acceptor.activeConnections(), acceptor.rejectedConnections(),
+                    merger != null ? merger.snapshot().version : 0,
+                    merger != null ? merger.rejectedUpdates() : 0);
+        }, 0, 1, TimeUnit.SECONDS);
+
+        // published snapshots are never written again, so they can be saved as they are
+        Callable<INDArray> currentParams = merger != null
+                ? () -> merger.snapshot().params
+                : () -> pullPartitions(partitions, globalModel.params());
+        Checkpointer checkpointer = new Checkpointer(ckptFile, ckptShards, ckptSec, shardManager, shardsDone,
+                currentParams);
+        BackgroundEvaluator evaluator = evalEvery <= 0 ? null : new BackgroundEvaluator(
+                new ParallelEvaluator(globalModel,
+                        new IDXFileReader(opts.flag("test-images", "")),
+                        new IDXLabelReader(opts.flag("test-labels", "")), 256, evalThreads),
+                evalEvery, shardsDone, currentParams);
+
+        acceptor.start();
+        System.out.println("Server listening on port " + port + " (max " + maxWorkers + " workers)");
+
+        // Returns as soon as the last shard of the last round is merged
+        shardManager.awaitFinished();
+        checkpointer.close();
+        if (evaluator != null) evaluator.close();
+
+        // Stop accepting and wait for handlers to send NO_MORE_SHARDS
+        acceptor.close();
+        if (aggregator != null) aggregator.close();
+        else                    collectPartitions(partitions, globalModel.params());
+        hb.shutdownNow();
+        if (store != null) store.close();
+        System.out.println("Broadcasts: " + broadcasts);
+        Metrics.stop();
+
+        saveModel(globalModel);
+    }
+
+    private static void saveModel(MultiLayerNetwork globalModel) throws Exception {
+        File out = new File("globalModel.zip");
+        ModelSerializer.writeModel(globalModel, out, true);
+        System.out.println(" Training complete; model saved to " + out.getAbsolutePath());
+    }
+
+    // CNN CONFIG; lr also drives the workers' Adam updater. Workers fit in workspaces, so
+    // activations and gradients reuse the same memory batch after batch
+    public static MultiLayerConfiguration buildConf(double lr) {
+        return new NeuralNetConfiguration.Builder()
                 .seed(123)
+                .trainingWorkspaceMode(WorkspaceMode.ENABLED)
+                .inferenceWorkspaceMode(WorkspaceMode.ENABLED)
                 .updater(new Adam(lr))
                 .weightInit(WeightInit.RELU)
                 .l2(1e-4)
@@ -61,53 +271,42 @@ public class ParameterServer {
                         .build())
                 .setInputType(InputType.convolutionalFlat(28,28,1))
                 .build();
+    }
 
-        MultiLayerNetwork globalModel = new MultiLayerNetwork(conf);
-        globalModel.init();
-
-        // Pre-shard the dataset
-        List<DataShard> shards = DataLoader.loadShards(trainImgs, trainLbls, numShards);
-        ShardManager shardManager = new ShardManager(shards);
-
-        // Progress counter + heartbeat
-        AtomicInteger shardsDone = new AtomicInteger(0);
-        ScheduledExecutorService hb = Executors.newSingleThreadScheduledExecutor();
-        hb.scheduleAtFixedRate(() -> {
-            int done = shardsDone.get();
-            int left = numShards - done;
-            double pct = 100.0 * done / numShards;
-            System.out.printf("[heartbeat] %d/%d shards done (%.1f%%), %d remaining%n",
-                    done, numShards, pct, left);
-        }, 0, 1, TimeUnit.SECONDS);
+    // hands every partition server its slice of the freshly initialized params
+    private static void initPartitions(PartitionTable partitions, INDArray params, double lr,
+                                       StalenessPolicy staleness) throws Exception {
+        for (PartitionTable.Entry e : partitions.entries()) {
+            try (PartitionClient pc = new PartitionClient(e)) {
+                pc.init(slice(params, e).dup(), lr, staleness);
+            }
+            System.out.printf("Partition %s:%d owns params [%d, %d)%n", e.host, e.port, e.from, e.to);
+        }
+    }
 
-        // -> clients
-        ExecutorService pool = Executors.newCachedThreadPool();
-        try (ServerSocket server = new ServerSocket(port)) {
-            server.setSoTimeout(1000);  // 1 s accept timeout
-            System.out.println("Server listening on port " + port);
-
-            while (true) {
-                if (shardManager.isEmpty()) break;
-                try {
-                    Socket client = server.accept();
-                    pool.submit(new ClientHandler(
-                            client, shardManager, globalModel,
-                            lr, localEpochs, batchSize,
-                            shardsDone, numShards
-                    ));
-                } catch (SocketTimeoutException e) {
-                }
+    // a copy of params with every slice pulled from its partition server
+    private static INDArray pullPartitions(PartitionTable partitions, INDArray params) throws Exception {
+        INDArray copy = params.dup();
+        for (PartitionTable.Entry e : partitions.entries()) {
+            try (PartitionClient pc = new PartitionClient(e)) {
+                pc.pullInto(slice(copy, e), true);
             }
         }
+        return copy;
+    }
 
-        // Wait for handlers
-        pool.shutdown();
-        pool.awaitTermination(1, TimeUnit.HOURS);
-        hb.shutdownNow();
+    // pulls the trained slices back into params and stops the partition servers
+    private static void collectPartitions(PartitionTable partitions, INDArray params)
+            throws Exception {
+        for (PartitionTable.Entry e : partitions.entries()) {
+            try (PartitionClient pc = new PartitionClient(e)) {
+                pc.pullInto(slice(params, e), true);
+                pc.shutdown();
+            }
+        }
+    }
 
-        // Save model
-        File out = new File("globalModel.zip");
-        ModelSerializer.writeModel(globalModel, out, true);
-        System.out.println(" Training complete; model saved to " + out.getAbsolutePath());
+    static INDArray slice(INDArray params, PartitionTable.Entry e) {
+        return params.get(NDArrayIndex.all(), NDArrayIndex.interval(e.from, e.to));
     }
 }
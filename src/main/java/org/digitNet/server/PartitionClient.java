@@ -0,0 +1,101 @@
+package org.digitNet.server;
+
+import org.digitNet.TensorChannel;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+
+/** One connection to a PartitionServer; used by workers and by the coordinator. */
+public class PartitionClient implements AutoCloseable {
+    private final PartitionTable.Entry partition;
+    private final SocketChannel channel;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    private final TensorChannel tensors;
+    private long version = -1; // partition version of the params last pulled
+
+    public PartitionClient(PartitionTable.Entry partition) throws IOException {
+        this.partition = partition;
+        this.channel = SocketChannel.open(new InetSocketAddress(partition.host, partition.port));
+        this.channel.socket().setTcpNoDelay(true);
+        this.out = new DataOutputStream(channel.socket().getOutputStream());
+        this.in  = new DataInputStream(channel.socket().getInputStream());
+        this.tensors = new TensorChannel(channel);
+
+        int status = in.readInt();
+        if (status != MessageType.ACCEPTED.code) {
+            channel.close();
+            throw new IOException("Partition server " + partition.host + ":" + partition.port
+                    + " refused connection (code " + status + ")");
+        }
+    }
+
+    public PartitionTable.Entry partition() {
+        return partition;
+    }
+
+    /**
+     * Reads this partition's current params into target (a [1, to - from] view is fine).
+     * If the partition hasn't moved since the last pull, nothing is sent and target is
+     * left alone; pass fresh=true when target may not hold that last pull any more.
+     */
+    public void pullInto(INDArray target, boolean fresh) throws IOException {
+        out.writeInt(MessageType.PULL_PARAMS.code);
+        out.writeLong(fresh ? -1 : version);
+        out.flush();
+        version = in.readLong();
+        if (in.readBoolean()) tensors.readTensorInto(target);
+    }
+
+    /** Whether the partition would still merge an update trained from the last pull. */
+    public boolean admits() throws IOException {
+        out.writeInt(MessageType.STALENESS_CHECK.code);
+        out.writeLong(version);
+        out.flush();
+        return in.readBoolean();
+    }
+
+    /**
+     * Sends params trained from the last pull and waits until the partition has merged
+     * them. It merges whatever their staleness, so ask admits() of every partition first.
+     */
+    public void push(INDArray slice, long samples) throws IOException {
+        out.writeInt(MessageType.PUSH_UPDATE.code);
+        out.writeInt((int) samples);
+        out.writeLong(version);
+        tensors.writeTensor(slice);
+        out.flush();
+        expect(MessageType.UPDATE_MERGED);
+    }
+
+    /** Coordinator only: hands the partition its initial params, the server learning rate and staleness policy. */
+    public void init(INDArray slice, double learningRate, StalenessPolicy staleness) throws IOException {
+        out.writeInt(MessageType.INIT_PARTITION.code);
+        out.writeDouble(learningRate);
+        out.writeInt(staleness.maxStaleness);
+        out.writeDouble(staleness.decay);
+        tensors.writeTensor(slice);
+        out.flush();
+        expect(MessageType.UPDATE_MERGED);
+    }
+
+    /** Coordinator only: tells the partition server to exit once its workers disconnect. */
+    public void shutdown() throws IOException {
+        out.writeInt(MessageType.SHUTDOWN.code);
+        out.flush();
+    }
+
+    private void expect(MessageType type) throws IOException {
+        int code = in.readInt();
+        if (code != type.code) throw new IOException("Expected " + type + ", got code " + code);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
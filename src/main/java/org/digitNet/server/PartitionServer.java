@@ -0,0 +1,118 @@
+package org.digitNet.server;
+
+import org.digitNet.CliOptions;
+import org.digitNet.TensorChannel;
+import org.digitNet.metrics.Metrics;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Holds one range of the global parameter vector and merges worker updates for it.
+ *
+ * Several of these split the params between them so no single process carries all of
+ * the broadcast traffic and aggregation work; ParameterServer still coordinates and
+ * dispatches the data shards. The coordinator initializes each partition on startup,
+ * collects the final params and then shuts it down.
+ */
+public class PartitionServer {
+    private final CountDownLatch shutdown = new CountDownLatch(1);
+    private volatile Aggregator aggregator; // null until INIT_PARTITION arrives
+
+    public static void main(String[] args) throws Exception {
+        CliOptions opts = new CliOptions(args);
+        if (opts.size() != 1) {
+            System.err.println("Usage: PartitionServer <port> [--max-workers=N] [--metrics-port=N]");
+            System.exit(1);
+        }
+        int port       = Integer.parseInt(opts.get(0));
+        int maxWorkers = opts.intFlag("max-workers", 1024);
+        Metrics.expose(opts.intFlag("metrics-port", 0));
+        new PartitionServer().run(port, maxWorkers);
+    }
+
+    private void run(int port, int maxWorkers) throws Exception {
+        ConnectionAcceptor acceptor = new ConnectionAcceptor(port, maxWorkers, socket -> () -> serve(socket));
+        Metrics.gauge("model.version", () -> aggregator == null ? 0 : aggregator.snapshot().version);
+        Metrics.gauge("workers.connected", acceptor::activeConnections);
+        acceptor.start();
+        System.out.println("Partition server listening on port " + port);
+
+        shutdown.await();
+        acceptor.close();
+        if (aggregator != null) aggregator.close();
+        Metrics.stop();
+        System.out.println("Partition server on port " + port + " stopped");
+    }
+
+    private void serve(Socket socket) {
+        try (DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+             DataInputStream  in  = new DataInputStream(socket.getInputStream()))
+        {
+            TensorChannel tensors = new TensorChannel(socket.getChannel());
+            out.writeInt(MessageType.ACCEPTED.code);
+            out.flush();
+
+            while (true) {
+                int code;
+                try {
+                    code = in.readInt();
+                } catch (EOFException e) {
+                    return; // client done
+                }
+                MessageType op = MessageType.fromCode(code);
+                switch (op) {
+                    case INIT_PARTITION -> {
+                        double lr = in.readDouble();
+                        StalenessPolicy staleness = new StalenessPolicy(in.readInt(), in.readDouble());
+                        INDArray slice = tensors.readTensor();
+                        if (aggregator != null) aggregator.close();
+                        aggregator = new Aggregator(slice, lr, staleness);
+                        System.out.printf("Initialized partition: %d params, lr=%s, %s%n",
+                                slice.length(), lr, staleness);
+                        out.writeInt(MessageType.UPDATE_MERGED.code);
+                    }
+                    case PULL_PARAMS -> {
+                        long held = in.readLong();
+                        Aggregator.Snapshot snap = requireInit().snapshot();
+                        out.writeLong(snap.version);
+                        out.writeBoolean(snap.version != held); // nothing to send if the client is current
+                        out.flush();
+                        if (snap.version != held) tensors.writeTensor(snap.params);
+                    }
+                    case STALENESS_CHECK -> {
+                        long baseVersion = in.readLong();
+                        out.writeBoolean(requireInit().admits(baseVersion));
+                    }
+                    case PUSH_UPDATE -> {
+                        // the worker already checked staleness with every partition, so this one
+                        // merges it too: an update lands on all partitions or on none
+                        int samples = in.readInt();
+                        long baseVersion = in.readLong();
+                        INDArray update = tensors.readPooled();
+                        requireInit().post(update, samples, baseVersion, true).join(); // pooled buffer is reused next push
+                        out.writeInt(MessageType.UPDATE_MERGED.code);
+                    }
+                    case SHUTDOWN -> {
+                        shutdown.countDown();
+                        return;
+                    }
+                    default -> throw new IllegalStateException("Unexpected request " + op);
+                }
+                out.flush();
+            }
+        } catch (Exception e) {
+            System.err.println("Partition handler error: " + e.getMessage());
+        }
+    }
+
+    private Aggregator requireInit() {
+        Aggregator a = aggregator;
+        if (a == null) throw new IllegalStateException("partition not initialized by coordinator");
+        return a;
+    }
+}
@@ -0,0 +1,109 @@
+package org.digitNet.server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Which PartitionServer owns which [from, to) range of the flattened parameter vector.
+ * The coordinator builds it and sends it to every worker in the handshake; an empty
+ * table means the coordinator serves the params itself.
+ */
+public class PartitionTable {
+    public static final class Entry {
+        public final String host;
+        public final int port;
+        public final long from, to;
+
+        public Entry(String host, int port, long from, long to) {
+            this.host = host;
+            this.port = port;
+            this.from = from;
+            this.to   = to;
+        }
+    }
+
+    private final List<Entry> entries;
+
+    private PartitionTable(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public static PartitionTable none() {
+        return new PartitionTable(new ArrayList<>());
+    }
+
+    /**
+     * Splits the params over the given "host:port" servers into near-equal ranges.
+     * With alignToLayers, cuts are moved to the nearest layer boundary so no layer is
+     * split (falls back to plain ranges when there are fewer boundaries than servers).
+     */
+    public static PartitionTable split(List<String> servers, long[] layerSizes, boolean alignToLayers) {
+        int n = servers.size();
+        long total = 0;
+        for (long s : layerSizes) total += s;
+
+        long[] bounds = new long[n + 1];
+        for (int i = 0; i <= n; i++) bounds[i] = total * i / n;
+        if (alignToLayers && layerSizes.length >= n) {
+            long[] layerEnds = new long[layerSizes.length];
+            long acc = 0;
+            for (int l = 0; l < layerSizes.length; l++) layerEnds[l] = (acc += layerSizes[l]);
+            long[] aligned = snapToLayers(bounds, layerEnds);
+            if (aligned != null) bounds = aligned;
+        }
+
+        List<Entry> entries = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            String hp = servers.get(i);
+            int colon = hp.lastIndexOf(':');
+            entries.add(new Entry(hp.substring(0, colon), Integer.parseInt(hp.substring(colon + 1)),
+                    bounds[i], bounds[i + 1]));
+        }
+        return new PartitionTable(entries);
+    }
+
+    // moves each inner cut to the closest layer end; null if two cuts would collide
+    private static long[] snapToLayers(long[] bounds, long[] layerEnds) {
+        long[] out = bounds.clone();
+        for (int i = 1; i < bounds.length - 1; i++) {
+            long best = layerEnds[0];
+            for (long end : layerEnds) {
+                if (Math.abs(end - bounds[i]) < Math.abs(best - bounds[i])) best = end;
+            }
+            out[i] = best;
+            if (out[i] <= out[i - 1] || out[i] >= out[out.length - 1]) return null;
+        }
+        return out;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(entries.size());
+        for (Entry e : entries) {
+            out.writeUTF(e.host);
+            out.writeInt(e.port);
+            out.writeLong(e.from);
+            out.writeLong(e.to);
+        }
+    }
+
+    public static PartitionTable read(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        List<Entry> entries = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            entries.add(new Entry(in.readUTF(), in.readInt(), in.readLong(), in.readLong()));
+        }
+        return new PartitionTable(entries);
+    }
+}
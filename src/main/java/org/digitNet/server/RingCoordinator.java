@@ -0,0 +1,198 @@
+package org.digitNet.server;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.digitNet.DataShard;
+import org.digitNet.ShardCache;
+import org.digitNet.ShardStore;
+import org.digitNet.TensorChannel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Ring mode: the server only coordinates. It waits for a fixed number of RingWorkers,
+ * gives each a rank and the address of the next rank, sends the initial params once, and
+ * then only hands out shard data in lockstep steps. The workers average their updates
+ * among themselves with a ring all-reduce, so no params pass through here until rank 0
+ * sends the final model back.
+ *
+ * Rank r owns shards r, r + N, r + 2N, ... for the whole run (so its shard cache hits from
+ * round 2 on) and trains them in a shuffled order each round; a step where a rank has run
+ * out of shards it still joins the all-reduce, contributing zero samples.
+ *
+ * There's no fault tolerance: the ring is only as alive as its slowest and least
+ * reliable member, and a lost worker ends the run.
+ */
+public class RingCoordinator {
+    private final int port, numWorkers;
+    private final double learningRate;
+    private final int localEpochs, batchSize, numRounds;
+    private final List<DataShard> shards;
+    private final ShardStore store; // null: send shard data from the IDX files
+
+    // one connected worker; its socket is only used by one thread at a time
+    private static final class Member {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+        final TensorChannel tensors;
+        final int listenPort;
+        final ShardCache<Boolean> cache; // mirror of the worker's LRU (sizes only)
+
+        Member(Socket socket, DataInputStream in, DataOutputStream out, int listenPort, long cacheBudget) {
+            this.socket = socket;
+            this.in = in;
+            this.out = out;
+            this.tensors = new TensorChannel(socket.getChannel());
+            this.listenPort = listenPort;
+            this.cache = new ShardCache<>(cacheBudget);
+        }
+    }
+
+    // what a rank reports back after a step
+    private record Done(int samples, double loss) {}
+
+    public RingCoordinator(int port, int numWorkers, double learningRate, int localEpochs, int batchSize,
+                           List<DataShard> shards, int numRounds, ShardStore store) {
+        this.port = port;
+        this.numWorkers = numWorkers;
+        this.learningRate = learningRate;
+        this.localEpochs = localEpochs;
+        this.batchSize = batchSize;
+        this.shards = shards;
+        this.numRounds = numRounds;
+        this.store = store;
+    }
+
+    /** Runs all rounds; on return model holds the trained params. */
+    public void run(MultiLayerNetwork model) throws Exception {
+        List<Member> ring = new ArrayList<>(numWorkers);
+        ExecutorService io = Executors.newVirtualThreadPerTaskExecutor();
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port));
+            System.out.printf("Ring coordinator listening on port %d, waiting for %d workers%n", port, numWorkers);
+            while (ring.size() < numWorkers) {
+                SocketChannel ch = server.accept();
+                ch.socket().setTcpNoDelay(true);
+                ring.add(handshake(ch.socket(), model));
+                System.out.printf("Worker %s joined as rank %d (%d/%d)%n",
+                        ch.socket().getRemoteSocketAddress(), ring.size() - 1, ring.size(), numWorkers);
+            }
+        }
+
+        try {
+            // every worker is listening already, so they can all connect to their successor at once
+            for (int r = 0; r < numWorkers; r++) {
+                Member m = ring.get(r), next = ring.get((r + 1) % numWorkers);
+                m.out.writeInt(MessageType.RING_ASSIGN.code);
+                m.out.writeInt(r);
+                m.out.writeInt(numWorkers);
+                m.out.writeDouble(learningRate);
+                m.out.writeUTF(next.socket.getInetAddress().getHostAddress());
+                m.out.writeInt(next.listenPort);
+                m.out.flush();
+                m.tensors.writeTensor(model.params());
+            }
+
+            int stepsPerRound = (shards.size() + numWorkers - 1) / numWorkers;
+            int step = 0;
+            for (int round = 1; round <= numRounds; round++) {
+                List<List<DataShard>> owned = assign(round);
+                for (int s = 0; s < stepsPerRound; s++, step++) {
+                    long t0 = System.nanoTime();
+                    List<Future<Done>> results = new ArrayList<>(numWorkers);
+                    for (int r = 0; r < numWorkers; r++) {
+                        Member m = ring.get(r);
+                        DataShard shard = s < owned.get(r).size() ? owned.get(r).get(s) : null;
+                        int st = step;
+                        results.add(io.submit(() -> step(m, st, shard)));
+                    }
+                    int samples = 0, trained = 0;
+                    double loss = 0;
+                    for (Future<Done> f : results) {
+                        Done d = f.get();
+                        if (d.samples > 0) {
+                            samples += d.samples;
+                            loss += d.loss;
+                            trained++;
+                        }
+                    }
+                    System.out.printf("[ring] round %d/%d, step %d/%d: %d shards, %d samples, loss=%.4f, %.2f s%n",
+                            round, numRounds, s + 1, stepsPerRound, trained, samples,
+                            trained > 0 ? loss / trained : 0, (System.nanoTime() - t0) / 1e9);
+                }
+            }
+
+            // every rank holds the same params; take them from rank 0
+            for (Member m : ring) {
+                m.out.writeInt(MessageType.NO_MORE_SHARDS.code);
+                m.out.flush();
+            }
+            model.setParams(ring.get(0).tensors.readTensor());
+        } finally {
+            io.shutdownNow();
+            for (Member m : ring) m.socket.close();
+        }
+    }
+
+    // same opening as ClientHandler; the worker answers with its cache budget and ring port
+    private Member handshake(Socket socket, MultiLayerNetwork model) throws IOException {
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        out.writeInt(MessageType.ACCEPTED.code);
+        byte[] js = model.getLayerWiseConfigurations().toJson().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(js.length);
+        out.write(js);
+        out.writeInt(localEpochs);
+        out.writeInt(batchSize);
+        out.flush();
+        long cacheBudget = in.readLong();
+        int listenPort = in.readInt();
+        return new Member(socket, in, out, listenPort, cacheBudget);
+    }
+
+    // rank r's shards in this round's order
+    private List<List<DataShard>> assign(int round) {
+        List<List<DataShard>> owned = new ArrayList<>(numWorkers);
+        for (int r = 0; r < numWorkers; r++) owned.add(new ArrayList<>());
+        for (int i = 0; i < shards.size(); i++) owned.get(i % numWorkers).add(shards.get(i));
+        Random rng = new Random(123 + round);
+        for (List<DataShard> l : owned) Collections.shuffle(l, rng);
+        return owned;
+    }
+
+    // sends one step's shard (data unless cached; none if shard is null) and waits for the rank to finish it
+    private Done step(Member m, int step, DataShard shard) throws IOException {
+        boolean cached = shard != null && m.cache.get(shard.getId()) != null;
+        m.out.writeInt(MessageType.RING_STEP.code);
+        m.out.writeInt(step);
+        m.out.writeInt(shard != null ? shard.getId() : -1);
+        m.out.writeBoolean(shard != null && !cached);
+        m.out.flush();
+        if (shard != null && !cached) {
+            long bytes = store != null
+                    ? store.send(shard, m.tensors)
+                    : m.tensors.writeTensor(shard.getFeatures()) + m.tensors.writeTensor(shard.getLabels());
+            m.cache.put(shard.getId(), Boolean.TRUE, bytes);
+        }
+
+        int code = m.in.readInt();
+        if (code != MessageType.RING_DONE.code) throw new IllegalStateException("Unexpected code: " + code);
+        int doneStep = m.in.readInt();
+        if (doneStep != step) throw new IllegalStateException("Rank answered step " + doneStep + ", expected " + step);
+        return new Done(m.in.readInt(), m.in.readDouble());
+    }
+}
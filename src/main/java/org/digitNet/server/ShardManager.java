@@ -1,23 +1,507 @@
 package org.digitNet.server;
 
 import org.digitNet.DataShard;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
-// Thread-safe queue of DataShard objects.
+// Thread-safe queue of DataShard objects, replayed for a fixed number of global rounds.
+// A round ends when every shard of it has been completed; only then is the queue
+// reshuffled and refilled, so handlers asking early simply wait.
+// Uses a ReentrantLock rather than monitors so waiting virtual-thread handlers don't pin carriers.
+//
+// Shards are handed out as leases. A lease that isn't answered within leaseTimeout puts
+// its shard back in the queue, and a failed connection gives its leases back right away.
+// Once the queue is empty, idle workers get speculative copies of shards that have been
+// out much longer than a typical shard takes; whichever result arrives first is merged
+// (commit) and the others are discarded, so one straggler can't hold up the round.
+//
+// In adaptive mode there are no fixed shards: each lease is carved on the fly from the
+// round's sample range, as large as the asking handler wants (see ShardSizer).
+//
+// checkpointState()/restore() capture and reinstate the round and the shards still to do,
+// so a restarted server carries on where a checkpoint left off (see Checkpoint).
 public class ShardManager {
-    private final ConcurrentLinkedQueue<DataShard> queue; // SHARED QUEUE BETWEEN EACH PROCESS
+    private static final int MAX_COPIES = 2;          // leases per shard incl. the speculative one
+    private static final int MIN_SAMPLES = 3;         // completed shards before we speculate
+    private static final int DURATION_WINDOW = 64;    // recent lease durations kept for the median
+    private static final long IDLE_RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    /** One dispatch of a shard to one worker. */
+    public static final class Lease {
+        public final DataShard shard;
+        public final boolean speculative;
+        final int round;
+        final Object owner;
+        final long startNanos = System.nanoTime();
+
+        Lease(DataShard shard, int round, Object owner, boolean speculative) {
+            this.shard = shard;
+            this.round = round;
+            this.owner = owner;
+            this.speculative = speculative;
+        }
+    }
+
+    /**
+     * Where a run stands: the round, what of it is merged, and every shard of it that
+     * isn't (queued or out on a lease) as {id, start, end} sample ranges.
+     */
+    public static final class State {
+        final boolean adaptive;
+        final int totalSamples, numRounds, round, doneThisRound;
+        final long samplesDone;
+        final int cursor, rotation, nextId;
+        final boolean finished;
+        final int[][] pending;
+
+        State(boolean adaptive, int totalSamples, int numRounds, int round, int doneThisRound,
+              long samplesDone, int cursor, int rotation, int nextId, boolean finished, int[][] pending) {
+            this.adaptive = adaptive;
+            this.totalSamples = totalSamples;
+            this.numRounds = numRounds;
+            this.round = round;
+            this.doneThisRound = doneThisRound;
+            this.samplesDone = samplesDone;
+            this.cursor = cursor;
+            this.rotation = rotation;
+            this.nextId = nextId;
+            this.finished = finished;
+            this.pending = pending;
+        }
+    }
+
+    // a shard of the current round that has been leased and isn't done yet
+    private static final class Active {
+        final DataShard shard;
+        final List<Lease> leases = new ArrayList<>(MAX_COPIES);
+        Lease committed; // lease whose result is being merged, if any
+
+        Active(DataShard shard) {
+            this.shard = shard;
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition(); // queue refilled or run finished
+
+    private final List<DataShard> shards;
+    private final ArrayDeque<DataShard> queue = new ArrayDeque<>(); // SHARED QUEUE BETWEEN EACH PROCESS
+    private final Map<Integer, DataShard> byId = new HashMap<>();   // read-only after construction
+    private final Map<Integer, Active> active = new LinkedHashMap<>(); // first leased first
+    private final Random rng = new Random(123);
+    private final int numRounds;
+    private final long leaseTimeoutNanos;    // 0: leases never expire
+    private final double speculateFactor;    // 0: no speculation
+    private final long[] durations = new long[DURATION_WINDOW];
+    private int durationCount;
+
+    private int round = 1;       // current round, 1-based
+    private int doneThisRound;
+    private long roundStart = System.nanoTime();
+    private boolean finished;
+    private long expired, speculated, duplicates;
+
+    // adaptive mode only
+    private final DataShard dataset;  // the whole sample range, or null for fixed shards
+    private final int defaultSize;    // samples per lease when the handler has no estimate yet
+    private int cursor;               // samples of this round carved so far
+    private int rotation;             // this round's carving starts at this sample
+    private int nextId;
+    private long samplesDone;
 
     public ShardManager(List<DataShard> shards) {
-        this.queue = new ConcurrentLinkedQueue<>(shards);
+        this(shards, 1);
+    }
+
+    public ShardManager(List<DataShard> shards, int numRounds) {
+        this(shards, numRounds, 0, 0);
+    }
+
+    /**
+     * @param leaseTimeoutSec requeue a shard whose worker hasn't answered after this long (0: never)
+     * @param speculateFactor re-run a shard once it has been out this many times the median
+     *                        shard time and the queue is empty (0: never)
+     */
+    public ShardManager(List<DataShard> shards, int numRounds, double leaseTimeoutSec, double speculateFactor) {
+        this(shards, null, 0, numRounds, leaseTimeoutSec, speculateFactor);
+    }
+
+    /**
+     * Adaptive mode: leases are carved from dataset in whatever size the handler asks for.
+     * @param defaultSize samples per lease until a handler has measured its worker
+     */
+    public static ShardManager adaptive(DataShard dataset, int defaultSize, int numRounds,
+                                        double leaseTimeoutSec, double speculateFactor) {
+        return new ShardManager(List.of(), dataset, defaultSize, numRounds, leaseTimeoutSec, speculateFactor);
+    }
+
+    private ShardManager(List<DataShard> shards, DataShard dataset, int defaultSize, int numRounds,
+                         double leaseTimeoutSec, double speculateFactor) {
+        if (numRounds < 1) throw new IllegalArgumentException("numRounds must be >= 1");
+        for (DataShard s : shards) {
+            if (byId.put(s.getId(), s) != null) {
+                throw new IllegalArgumentException("Duplicate shard id " + s.getId());
+            }
+        }
+        this.shards = new ArrayList<>(shards);
+        this.numRounds = numRounds;
+        this.leaseTimeoutNanos = (long) (leaseTimeoutSec * 1e9);
+        this.speculateFactor = speculateFactor;
+        this.dataset = dataset;
+        this.defaultSize = Math.max(1, defaultSize);
+        this.nextId = shards.size();
+        this.queue.addAll(shards);
+        this.finished = dataset == null ? shards.isEmpty() : dataset.numSamples() == 0;
+    }
+
+    public boolean isAdaptive() {
+        return dataset != null;
+    }
+
+    // Leases the next shard to owner, waiting while the current round still has shards in
+    // flight (or offering a speculative copy of a straggler). Returns null once all rounds are done.
+    public Lease nextShard(Object owner) throws InterruptedException {
+        return nextShard(owner, 0);
+    }
+
+    // As above; in adaptive mode a newly carved shard gets about wantSamples samples (0: default)
+    public Lease nextShard(Object owner, int wantSamples) throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                Lease l = lease(owner, wantSamples);
+                if (l != null) return l;
+                if (finished) return null;
+                // wake up now and then: leases expire and stragglers become eligible over time
+                changed.awaitNanos(IDLE_RECHECK_NANOS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Leases the next shard if one is available right now, otherwise null without waiting
+    public Lease tryNextShard(Object owner) {
+        return tryNextShard(owner, 0);
+    }
+
+    public Lease tryNextShard(Object owner, int wantSamples) {
+        lock.lock();
+        try {
+            return lease(owner, wantSamples);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Claims the shard's result for merging. Returns false if another lease's result
+    // already won (or the round moved on), in which case the caller drops this one.
+    public boolean commit(Lease lease) {
+        lock.lock();
+        try {
+            Active a = lease.round == round ? active.get(lease.shard.getId()) : null;
+            if (a == null || a.committed != null) {
+                duplicates++;
+                if (a != null) a.leases.remove(lease);
+                return false;
+            }
+            a.committed = lease;
+            a.leases.remove(lease);
+            queue.remove(lease.shard); // may have been requeued after its lease expired
+            recordDuration(System.nanoTime() - lease.startNanos);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Marks a committed shard as trained and merged; the last one of a round starts the next
+    public void complete(Lease lease) {
+        lock.lock();
+        try {
+            Active a = active.get(lease.shard.getId());
+            if (a == null || a.committed != lease) return;
+            active.remove(lease.shard.getId()); // any other copy still out is now a duplicate
+            doneThisRound++;
+            samplesDone += lease.shard.numSamples();
+            if (queue.isEmpty() && active.isEmpty() && samplesLeftToCarve() == 0) {
+                System.out.printf("[round %d/%d] complete: %d shards in %.1f s%n",
+                        round, numRounds, doneThisRound, (System.nanoTime() - roundStart) / 1e9);
+                if (round == numRounds) {
+                    finished = true;
+                } else {
+                    round++;
+                    doneThisRound = 0;
+                    samplesDone = 0;
+                    roundStart = System.nanoTime();
+                    if (dataset != null) {
+                        cursor = 0;
+                        rotation = rng.nextInt(dataset.numSamples());
+                    } else {
+                        Collections.shuffle(shards, rng);
+                        queue.addAll(shards);
+                    }
+                }
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Gives back a lease whose worker failed (or whose committed result couldn't be merged),
+    // so the round can still finish
+    public void requeue(Lease lease) {
+        lock.lock();
+        try {
+            Active a = lease.round == round ? active.get(lease.shard.getId()) : null;
+            if (a == null) return;
+            a.leases.remove(lease);
+            if (a.committed == lease) a.committed = null;
+            if (a.committed == null && a.leases.isEmpty() && !queue.contains(a.shard)) {
+                queue.addFirst(a.shard);
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Blocks until the last shard of the last round has completed
+    public void awaitFinished() throws InterruptedException {
+        lock.lock();
+        try {
+            while (!finished) changed.await();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // lock held
+    private Lease lease(Object owner, int wantSamples) {
+        long now = System.nanoTime();
+        expireLeases(now);
+        DataShard queued = queue.poll();
+        DataShard s = queued != null || samplesLeftToCarve() == 0
+                ? queued : carve(wantSamples > 0 ? wantSamples : defaultSize);
+        if (s != null) {
+            Lease l = new Lease(s, round, owner, false);
+            active.computeIfAbsent(s.getId(), id -> new Active(s)).leases.add(l);
+            return l;
+        }
+        return speculate(owner, now);
+    }
+
+    // lock held; requeues shards whose every lease has run out. A late result from an
+    // expired lease still counts if it arrives first.
+    private void expireLeases(long now) {
+        if (leaseTimeoutNanos <= 0) return;
+        for (Active a : active.values()) {
+            if (a.committed != null || a.leases.isEmpty()) continue;
+            if (!a.leases.removeIf(l -> now - l.startNanos > leaseTimeoutNanos)) continue;
+            expired++;
+            if (a.leases.isEmpty() && !queue.contains(a.shard)) {
+                queue.addLast(a.shard);
+                System.out.printf("Lease on shard %d expired; requeued%n", a.shard.getId());
+            }
+        }
+    }
+
+    // lock held; a copy of the longest-running shard, if it is overdue and owner isn't on it
+    private Lease speculate(Object owner, long now) {
+        if (speculateFactor <= 0 || durationCount < MIN_SAMPLES) return null;
+        long median = medianDuration();
+        long threshold = (long) (speculateFactor * median);
+        for (Active a : active.values()) {
+            if (a.committed != null || a.leases.isEmpty() || a.leases.size() >= MAX_COPIES) continue;
+            Lease first = a.leases.get(0);
+            if (now - first.startNanos < threshold) continue;
+            if (first.owner == owner) continue;
+            Lease l = new Lease(a.shard, round, owner, true);
+            a.leases.add(l);
+            speculated++;
+            System.out.printf("Shard %d out for %.1f s (median %.1f s); speculating%n",
+                    a.shard.getId(), (now - first.startNanos) / 1e9, median / 1e9);
+            return l;
+        }
+        return null;
+    }
+
+    private int samplesLeftToCarve() {
+        return dataset == null ? 0 : dataset.numSamples() - cursor;
+    }
+
+    // lock held; the next n samples of this round's rotated order, cut at the wrap point
+    // so every shard stays one contiguous range
+    private DataShard carve(int n) {
+        int total = dataset.numSamples();
+        int from = (rotation + cursor) % total;
+        int to = Math.min(from + Math.min(n, total - cursor), total);
+        cursor += to - from;
+        return dataset.slice(nextId++, from, to);
+    }
+
+    private void recordDuration(long nanos) {
+        durations[durationCount % DURATION_WINDOW] = nanos;
+        durationCount++;
+    }
+
+    private long medianDuration() {
+        long[] d = Arrays.copyOf(durations, Math.min(durationCount, DURATION_WINDOW));
+        Arrays.sort(d);
+        return d[d.length / 2];
+    }
+
+    // Shards waiting to be dispatched in the current round
+    public int queueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Leases currently out or being merged (speculative copies included)
+    public int inFlight() {
+        lock.lock();
+        try {
+            int n = 0;
+            for (Active a : active.values()) n += a.leases.size() + (a.committed != null ? 1 : 0);
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Fraction of the current round's work that is merged
+    public double roundProgress() {
+        lock.lock();
+        try {
+            if (finished) return 1.0;
+            if (dataset != null) return (double) samplesDone / dataset.numSamples();
+            return shards.isEmpty() ? 1.0 : (double) doneThisRound / shards.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Leases that ran out, speculative copies handed out, results discarded as duplicates
+    public long[] leaseStats() {
+        lock.lock();
+        try {
+            return new long[] { expired, speculated, duplicates };
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Current progress. Leased shards count as pending: their results may not be merged
+    // yet, so after a restore they are trained again.
+    public State checkpointState() {
+        lock.lock();
+        try {
+            List<int[]> pending = new ArrayList<>(queue.size() + active.size());
+            for (DataShard s : queue) pending.add(range(s));
+            for (Active a : active.values()) {
+                if (!queue.contains(a.shard)) pending.add(range(a.shard));
+            }
+            return new State(isAdaptive(), totalSamples(), numRounds, round, doneThisRound, samplesDone,
+                    cursor, rotation, nextId, finished, pending.toArray(new int[0][]));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Picks up from a checkpoint taken with the same dataset, sharding and numRounds.
+    // Call before any shard is leased.
+    public void restore(State s) {
+        lock.lock();
+        try {
+            if (s.adaptive != isAdaptive() || s.totalSamples != totalSamples() || s.numRounds != numRounds) {
+                throw new IllegalArgumentException(String.format(
+                        "Checkpoint is for %s shards over %d samples in %d rounds, not %s shards over %d in %d",
+                        s.adaptive ? "adaptive" : "fixed", s.totalSamples, s.numRounds,
+                        isAdaptive() ? "adaptive" : "fixed", totalSamples(), numRounds));
+            }
+            queue.clear();
+            active.clear();
+            for (int[] p : s.pending) queue.add(shardFor(p));
+            round = s.round;
+            doneThisRound = s.doneThisRound;
+            samplesDone = s.samplesDone;
+            cursor = s.cursor;
+            rotation = s.rotation;
+            nextId = Math.max(nextId, s.nextId);
+            finished = s.finished;
+            roundStart = System.nanoTime();
+            rng.setSeed(123 + round); // later rounds are shuffled differently than they would have been
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int totalSamples() {
+        if (dataset != null) return dataset.numSamples();
+        int n = 0;
+        for (DataShard s : shards) n += s.numSamples();
+        return n;
+    }
+
+    private static int[] range(DataShard s) {
+        return new int[] { s.getId(), s.getStart(), s.getEnd() };
+    }
+
+    // fixed shards are looked up (and must cover the same samples); carved ones are re-cut
+    private DataShard shardFor(int[] p) {
+        DataShard s;
+        if (dataset != null) {
+            s = dataset.slice(p[0], p[1] - dataset.getStart(), p[2] - dataset.getStart());
+        } else {
+            s = byId.get(p[0]);
+            if (s == null || s.getStart() != p[1] || s.getEnd() != p[2]) {
+                throw new IllegalArgumentException("Checkpoint shard " + p[0] + " [" + p[1] + ", " + p[2]
+                        + ") doesn't match this sharding");
+            }
+        }
+        return s;
+    }
+
+    // Looks up a shard by its stable id, or null if unknown
+    public DataShard getShard(int id) {
+        return byId.get(id);
+    }
+
+    public int getRound() {
+        lock.lock();
+        try {
+            return round;
+        } finally {
+            lock.unlock();
+        }
     }
 
-    // Returns the next shard, or null if none remain
-    public DataShard nextShard() {
-        return queue.poll();
+    public int getNumRounds() {
+        return numRounds;
     }
 
-    public boolean isEmpty(){
-        return queue.isEmpty();
+    public boolean isFinished() {
+        lock.lock();
+        try {
+            return finished;
+        } finally {
+            lock.unlock();
+        }
     }
 }
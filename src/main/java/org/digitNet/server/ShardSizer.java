@@ -0,0 +1,47 @@
+package org.digitNet.server;
+
+/**
+ * Picks shard sizes for one worker so each dispatch takes about targetSec.
+ *
+ * Throughput is measured from the worker's completed round trips (dispatch or previous
+ * result, whichever is later, up to this result: so prefetched shards waiting in line
+ * don't count as slow) and smoothed with an EWMA. Sizes are whole mini-batches.
+ */
+final class ShardSizer {
+    private static final double ALPHA = 0.5; // weight of the newest measurement
+
+    private final double targetSec;
+    private final int quantum, min, max;
+    private double samplesPerSec; // 0 until the first result
+    private int size;
+
+    ShardSizer(double targetSec, int initialSize, int batchSize, int maxSize) {
+        this.targetSec = targetSec;
+        this.quantum = Math.max(1, batchSize);
+        this.min = quantum;
+        this.max = Math.max(min, maxSize);
+        this.size = clamp(initialSize);
+    }
+
+    /** Samples to ask for in the next shard. */
+    int next() {
+        return size;
+    }
+
+    /** One result came back: samples trained in nanos of wall-clock time. */
+    void observe(int samples, long nanos) {
+        if (samples <= 0 || nanos <= 0) return;
+        double rate = samples / (nanos / 1e9);
+        samplesPerSec = samplesPerSec == 0 ? rate : ALPHA * rate + (1 - ALPHA) * samplesPerSec;
+        size = clamp((int) Math.min(Integer.MAX_VALUE, samplesPerSec * targetSec));
+    }
+
+    double samplesPerSec() {
+        return samplesPerSec;
+    }
+
+    private int clamp(int n) {
+        n = Math.max(min, Math.min(max, n));
+        return Math.max(quantum, n / quantum * quantum);
+    }
+}
@@ -0,0 +1,33 @@
+package org.digitNet.server;
+
+/**
+ * How an update computed against an older model version is merged.
+ *
+ * Staleness is how many versions the model moved on between dispatching the params and
+ * merging the worker's result. Updates beyond maxStaleness are rejected (the shard is
+ * retrained); the rest are down-weighted by (1 + staleness)^-decay.
+ */
+public final class StalenessPolicy {
+    public static final StalenessPolicy NONE = new StalenessPolicy(-1, 0.0);
+
+    public final int maxStaleness; // < 0: never reject
+    public final double decay;     // 0: no down-weighting
+
+    public StalenessPolicy(int maxStaleness, double decay) {
+        this.maxStaleness = maxStaleness;
+        this.decay = decay;
+    }
+
+    public boolean accepts(long staleness) {
+        return maxStaleness < 0 || staleness <= maxStaleness;
+    }
+
+    public double weight(long staleness) {
+        return decay == 0.0 ? 1.0 : Math.pow(1.0 + staleness, -decay);
+    }
+
+    @Override
+    public String toString() {
+        return "maxStaleness=" + (maxStaleness < 0 ? "unbounded" : maxStaleness) + ", decay=" + decay;
+    }
+}
@@ -0,0 +1,235 @@
+package org.digitNet.sim;
+
+import org.bytedeco.javacpp.Pointer;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.digitNet.CliOptions;
+import org.digitNet.DataLoader;
+import org.digitNet.DataShard;
+import org.digitNet.TensorChannel;
+import org.digitNet.codec.UpdateCodec;
+import org.digitNet.codec.UpdateCodecs;
+import org.digitNet.server.*;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the real server side (ShardManager, Aggregator, ConnectionAcceptor, ClientHandler,
+ * wired up as ParameterServer does) in this JVM against many FakeWorkers over loopback,
+ * once per worker count, and reports how throughput, dispatch latency and memory change
+ * as the count grows. Workers sleep instead of training, so the numbers are the server's:
+ * with hundreds of workers the limit is whatever it spends per connection and per shard.
+ *
+ * The model decides the message sizes (and the merge cost): the CNN by default, or a
+ * single softmax layer (--model=tiny) to look at the per-message overhead alone.
+ */
+public class ClusterSimulator {
+    private final String trainImgs, trainLbls;
+    private final int shardsPerWorker, numRounds, localEpochs, batchSize, maxWorkers;
+    private final double lr, leaseTimeout, speculate, stragglers, stragglerSlowdown;
+    private final StalenessPolicy staleness;
+    private final MultiLayerConfiguration conf;
+    private final FakeWorker.Profile profile;
+    private final PrintStream console = System.out, consoleErr = System.err;
+    private final boolean verbose;
+
+    private ClusterSimulator(CliOptions opts) {
+        trainImgs         = opts.get(0);
+        trainLbls         = opts.get(1);
+        shardsPerWorker   = opts.intFlag("shards-per-worker", 4);
+        numRounds         = opts.intFlag("rounds", 1);
+        localEpochs       = opts.intFlag("epochs", 1);
+        batchSize         = opts.intFlag("batch", 32);
+        maxWorkers        = opts.intFlag("max-workers", 1024);
+        lr                = opts.doubleFlag("lr", 0.001);
+        leaseTimeout      = opts.doubleFlag("lease-timeout", 60);
+        speculate         = opts.doubleFlag("speculate", 2.0);
+        stragglers        = opts.doubleFlag("stragglers", 0);
+        stragglerSlowdown = opts.doubleFlag("straggler-slowdown", 4);
+        staleness = new StalenessPolicy(opts.intFlag("max-staleness", -1), opts.doubleFlag("staleness-decay", 0.5));
+        conf = opts.flag("model", "cnn").equals("tiny") ? tinyConf(lr) : ParameterServer.buildConf(lr);
+        profile = new FakeWorker.Profile(
+                opts.flag("codec", "full"),
+                opts.has("stream"),
+                opts.longFlag("cache-mb", 256) * 1024 * 1024,
+                opts.doubleFlag("sample-us", 500),
+                opts.doubleFlag("jitter", 0.2),
+                opts.doubleFlag("fail-rate", 0),
+                opts.longFlag("rejoin-ms", 500),
+                opts.doubleFlag("bandwidth-mbps", 0) * 1e6 / 8);
+        verbose = opts.has("verbose");
+    }
+
+    public static void main(String[] args) throws Exception {
+        CliOptions opts = new CliOptions(args);
+        if (opts.size() != 2) {
+            System.err.println("Usage: ClusterSimulator <trainImages> <trainLabels> [--workers=10,50,200]"
+                    + " [--shards-per-worker=4] [--rounds=1] [--epochs=1] [--batch=32] [--model=cnn|tiny]"
+                    + " [--codec=full] [--stream] [--cache-mb=256] [--sample-us=500] [--jitter=0.2]"
+                    + " [--stragglers=fraction] [--straggler-slowdown=4] [--fail-rate=p] [--rejoin-ms=500]"
+                    + " [--bandwidth-mbps=0] [--max-workers=1024] [--max-staleness=-1] [--staleness-decay=0.5]"
+                    + " [--lease-timeout=60] [--speculate=2.0] [--port=5700] [--verbose]");
+            System.err.println("  sample-us: simulated compute per sample per local epoch");
+            System.err.println("  fail-rate: chance a worker drops its connection on each shard it receives");
+            System.err.println("  bandwidth-mbps: per-worker link rate (0: loopback speed)");
+            System.err.println("  verbose: keep the server's own log (muted by default)");
+            System.exit(1);
+        }
+        ClusterSimulator sim = new ClusterSimulator(opts);
+        int port = opts.intFlag("port", 5700);
+        String[] counts = opts.flag("workers", "10,50,200").split(",");
+
+        System.out.printf("%8s %7s %7s %9s %10s %26s %9s %8s %10s %10s %5s %6s %7s%n",
+                "workers", "shards", "wall s", "shards/s", "samples/s", "dispatch p50/p99/max ms",
+                "MB/s out", "heap MB", "+heap KB/w", "RSS MB", "busy", "failed", "expired");
+        int bestWorkers = 0;
+        double best = 0;
+        for (int i = 0; i < counts.length; i++) {
+            int n = Integer.parseInt(counts[i].trim());
+            // a fresh port per run, so the previous run's sockets in TIME_WAIT don't matter
+            double shardsPerSec = sim.run(n, port + i);
+            if (shardsPerSec > best) {
+                best = shardsPerSec;
+                bestWorkers = n;
+            }
+        }
+        System.out.printf("Peak throughput %.1f shards/s at %d workers%n", best, bestWorkers);
+    }
+
+    // one server + numWorkers fake workers until every round is done; prints a row, returns shards/s
+    private double run(int numWorkers, int port) throws Exception {
+        if (!verbose) {
+            PrintStream mute = new PrintStream(OutputStream.nullOutputStream());
+            System.setOut(mute);
+            System.setErr(mute);
+        }
+        try {
+            return simulate(numWorkers, port);
+        } finally {
+            System.setOut(console);
+            System.setErr(consoleErr);
+        }
+    }
+
+    private double simulate(int numWorkers, int port) throws Exception {
+        MultiLayerNetwork model = new MultiLayerNetwork(conf);
+        model.init();
+        int numShards = numWorkers * shardsPerWorker;
+        List<DataShard> shards = DataLoader.loadShards(trainImgs, trainLbls, numShards);
+        int totalSamples = shards.stream().mapToInt(DataShard::numSamples).sum();
+        FakeWorker.Update update = cannedUpdate(model);
+
+        ShardManager shardManager = new ShardManager(shards, numRounds, leaseTimeout, speculate);
+        AtomicInteger shardsDone = new AtomicInteger();
+        BroadcastCache broadcasts = new BroadcastCache(model);
+        SimStats stats = new SimStats();
+        AtomicBoolean finished = new AtomicBoolean();
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+        int slow = (int) Math.round(stragglers * numWorkers);
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long heapBase;
+        AtomicLong heapPeak = new AtomicLong(), rssPeak = new AtomicLong();
+        double wallSec;
+
+        // closed in reverse, whatever simulate() ran into: the acceptor cuts the connections
+        // the fake workers may still hang on, so they can be waited for last
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+             Aggregator aggregator = new Aggregator(model.params(), lr, staleness);
+             ConnectionAcceptor acceptor = new ConnectionAcceptor(port, maxWorkers, socket ->
+                     new ClientHandler(
+                             socket, shardManager, model, aggregator, PartitionTable.none(),
+                             localEpochs, batchSize,
+                             shardsDone, numShards * numRounds,
+                             null, null, broadcasts
+                     ));
+             ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor()) {
+            // memory: heap baseline of the idle server (model, shards, canned update all in
+            // place), then heap and process RSS (off-heap included) peaks
+            System.gc();
+            heapBase = memory.getHeapMemoryUsage().getUsed();
+            heapPeak.set(heapBase);
+            rssPeak.set(Pointer.physicalBytes());
+            sampler.scheduleAtFixedRate(() -> {
+                heapPeak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                rssPeak.accumulateAndGet(Pointer.physicalBytes(), Math::max);
+            }, 0, 100, TimeUnit.MILLISECONDS);
+
+            try {
+                acceptor.start();
+                long t0 = System.nanoTime();
+                for (int w = 0; w < numWorkers; w++) {
+                    workers.execute(new FakeWorker(address, profile, update,
+                            w < slow ? stragglerSlowdown : 1.0, 123 + w, stats, finished::get));
+                }
+                shardManager.awaitFinished();
+                wallSec = (System.nanoTime() - t0) / 1e9;
+            } finally {
+                finished.set(true);
+            }
+        }
+
+        if (stats.error() != null) consoleErr.println("A fake worker failed: " + stats.error());
+        double shardsPerSec = shardsDone.get() / wallSec;
+        console.printf("%8d %7d %7.1f %9.1f %10.0f %8.1f/%7.1f/%8.1f %9.1f %8.0f %10.1f %10.0f %5d %6d %7d%n",
+                numWorkers, shardsDone.get(), wallSec, shardsPerSec, (double) totalSamples * numRounds / wallSec,
+                stats.dispatch.quantileNanos(0.5) / 1e6, stats.dispatch.quantileNanos(0.99) / 1e6,
+                stats.dispatch.maxNanos() / 1e6,
+                stats.bytesIn.get() / wallSec / 1e6,
+                heapPeak.get() / 1e6, (heapPeak.get() - heapBase) / 1e3 / numWorkers,
+                rssPeak.get() / 1e6,
+                stats.busy.get(), stats.failures.get(), shardManager.leaseStats()[0]);
+        return shardsPerSec;
+    }
+
+    // what every fake worker sends back: the initial params as a raw tensor, or for the
+    // encoded codecs a slightly perturbed copy encoded against them, so it is update-sized
+    private FakeWorker.Update cannedUpdate(MultiLayerNetwork model) {
+        INDArray params = model.params().dup('c');
+        UpdateCodec codec = UpdateCodecs.create(profile.codec(), model, true);
+        if (codec.sendsRawTensor()) {
+            long bytes = TensorChannel.sizeOf(params);
+            ByteBuffer payload = ByteBuffer.allocateDirect((int) bytes);
+            ByteBuffer src = params.data().asNio();
+            src.limit((int) bytes).position(0);
+            payload.put(src).flip();
+            return new FakeWorker.Update(
+                    new TensorChannel.Header(params.dataType(), params.shape(), bytes),
+                    payload.asReadOnlyBuffer());
+        }
+        INDArray trained = params.add(Nd4j.randn(params.dataType(), params.shape()).muli(1e-2));
+        return new FakeWorker.Update(null, ByteBuffer.wrap(codec.encode(trained, params)).asReadOnlyBuffer());
+    }
+
+    // one softmax layer: next to no bytes or merge work per update
+    private static MultiLayerConfiguration tinyConf(double lr) {
+        return new NeuralNetConfiguration.Builder()
+                .seed(123)
+                .updater(new Adam(lr))
+                .list()
+                .layer(new OutputLayer.Builder(LossFunctions.LossFunction.NEGATIVELOGLIKELIHOOD)
+                        .nIn(28 * 28).nOut(10)
+                        .activation(Activation.SOFTMAX)
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,219 @@
+package org.digitNet.sim;
+
+import org.digitNet.TensorChannel;
+import org.digitNet.server.MessageType;
+import org.digitNet.server.PartitionTable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A worker that speaks WorkerClient's protocol without DL4J: shard data and params are
+ * read off the socket and thrown away, training is a sleep, and the update it sends back
+ * is the same canned bytes every time. Costs a virtual thread and a 64 KB buffer, so
+ * hundreds fit in one JVM next to a real server.
+ *
+ * Optionally its link is throttled, its compute time jitters, and it crashes now and then
+ * (drops the connection with a shard in hand, then rejoins like a restarted worker).
+ */
+final class FakeWorker implements Runnable {
+    private static final int CHUNK = 64 * 1024;
+
+    /** Behaviour shared by all simulated workers. */
+    record Profile(String codec, boolean stream, long cacheBytes,
+                   double sampleUs,     // compute per sample per local epoch
+                   double jitter,       // compute time varies by ± this fraction
+                   double failRate,     // chance of crashing on each shard received
+                   long rejoinMs,       // how long a crashed worker stays away
+                   double bytesPerSec)  // link rate, both directions together (0: unthrottled)
+    {}
+
+    /** The update every worker answers with; header null means an encoded (int length + bytes) update. */
+    record Update(TensorChannel.Header header, ByteBuffer payload) {}
+
+    private static final class Crash extends Exception {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private final InetSocketAddress server;
+    private final Profile profile;
+    private final Update update;
+    private final double slowdown; // > 1 for stragglers
+    private final Random rng;
+    private final SimStats stats;
+    private final BooleanSupplier finished;
+    private final ByteBuffer scratch = ByteBuffer.allocateDirect(CHUNK);
+    private final Map<Integer, Integer> seen = new HashMap<>(); // shard id → samples, for SHARD_CACHED
+    private long linkFreeNanos;
+
+    FakeWorker(InetSocketAddress server, Profile profile, Update update, double slowdown, long seed,
+               SimStats stats, BooleanSupplier finished) {
+        this.server = server;
+        this.profile = profile;
+        this.update = update;
+        this.slowdown = slowdown;
+        this.rng = new Random(seed);
+        this.stats = stats;
+        this.finished = finished;
+    }
+
+    @Override
+    public void run() {
+        long backoffMs = 50;
+        try {
+            while (!finished.getAsBoolean()) {
+                try {
+                    if (session()) return;
+                    stats.busy.incrementAndGet(); // turned away; back off like WorkerClient does
+                    sleep(Duration.ofMillis(backoffMs));
+                    backoffMs = Math.min(backoffMs * 2, 2000);
+                } catch (Crash c) {
+                    stats.failures.incrementAndGet();
+                    seen.clear(); // a restarted worker comes back with an empty cache
+                    sleep(Duration.ofMillis(profile.rejoinMs()));
+                } catch (IOException e) {
+                    // refused or reset: the run may be over, otherwise try again
+                    sleep(Duration.ofMillis(backoffMs));
+                }
+            }
+        } catch (InterruptedException ignored) {
+        } catch (RuntimeException e) {
+            stats.error(e);
+        }
+    }
+
+    // one connection; true once the server said NO_MORE_SHARDS, false if it was busy
+    private boolean session() throws IOException, Crash, InterruptedException {
+        try (SocketChannel ch = SocketChannel.open()) {
+            // a small receive window so a throttled reader holds the server's sends back too
+            if (profile.bytesPerSec() > 0) ch.setOption(StandardSocketOptions.SO_RCVBUF, CHUNK);
+            ch.connect(server);
+            Socket sock = ch.socket();
+            sock.setTcpNoDelay(true);
+            DataOutputStream out = new DataOutputStream(sock.getOutputStream());
+            DataInputStream  in  = new DataInputStream(sock.getInputStream());
+
+            int status = in.readInt();
+            if (status == MessageType.SERVER_BUSY.code) return false;
+            if (status != MessageType.ACCEPTED.code) throw new IllegalStateException("Unexpected code: " + status);
+            TensorChannel tensors = new TensorChannel(ch);
+
+            // handshake: the model JSON is of no use without a model
+            in.skipNBytes(in.readInt());
+            int localEpochs = in.readInt();
+            in.readInt(); // batchSize
+            out.writeLong(profile.cacheBytes());
+            out.writeUTF(profile.codec());
+            out.writeInt(0); // prefetch
+            out.writeInt(1); // capacity
+            out.writeBoolean(profile.stream());
+            out.flush();
+            String spec = in.readUTF();
+            if (!spec.equals(profile.codec())) throw new IllegalStateException("Server answered codec " + spec);
+            PartitionTable.read(in);
+
+            long ready = System.nanoTime();
+            while (true) {
+                int code = in.readInt();
+                long t0 = System.nanoTime();
+                stats.dispatch.record(t0 - ready);
+                if (code == MessageType.NO_MORE_SHARDS.code) return true;
+
+                int id = in.readInt();
+                in.readLong(); // model version
+                if (in.readBoolean()) {
+                    if (update.header() != null) drain(tensors, ch);
+                    else                         skip(ch, in.readInt());
+                }
+                int samples;
+                if (code == MessageType.SHARD_DATA.code) {
+                    samples = (int) drain(tensors, ch).shape()[0];
+                    drain(tensors, ch);
+                } else if (code == MessageType.SHARD_STREAM.code) {
+                    samples = in.readInt();
+                    in.readInt(); // features per sample
+                    in.readInt(); // classes
+                    for (long rows = 0; rows < samples; ) {
+                        rows += drain(tensors, ch).shape()[0];
+                        drain(tensors, ch);
+                    }
+                } else if (code == MessageType.SHARD_CACHED.code) {
+                    Integer n = seen.get(id);
+                    if (n == null) throw new IllegalStateException("No data for cached shard " + id);
+                    samples = n;
+                } else {
+                    throw new IllegalStateException("Unexpected code: " + code);
+                }
+                seen.put(id, samples);
+                stats.receive.record(System.nanoTime() - t0);
+
+                if (rng.nextDouble() < profile.failRate()) throw new Crash();
+
+                // "training"
+                double factor = slowdown * (1 + profile.jitter() * (2 * rng.nextDouble() - 1));
+                sleep(Duration.ofNanos((long) (samples * localEpochs * profile.sampleUs() * 1000 * factor)));
+
+                if (update.header() != null) {
+                    tensors.writeHeaderOnly(update.header());
+                } else {
+                    out.writeInt(update.payload().remaining());
+                }
+                send(ch, update.payload().duplicate());
+                stats.trained.incrementAndGet();
+                ready = System.nanoTime();
+            }
+        }
+    }
+
+    // reads a tensor header and discards its payload; returns the header
+    private TensorChannel.Header drain(TensorChannel tensors, SocketChannel ch) throws IOException, InterruptedException {
+        TensorChannel.Header h = tensors.readHeaderOnly();
+        skip(ch, h.payloadBytes());
+        return h;
+    }
+
+    private void skip(SocketChannel ch, long bytes) throws IOException, InterruptedException {
+        while (bytes > 0) {
+            scratch.clear().limit((int) Math.min(bytes, CHUNK));
+            int n = ch.read(scratch);
+            if (n < 0) throw new EOFException("server closed mid-payload");
+            bytes -= n;
+            stats.bytesIn.addAndGet(n);
+            pace(n);
+        }
+    }
+
+    private void send(SocketChannel ch, ByteBuffer src) throws IOException, InterruptedException {
+        int end = src.limit();
+        while (src.position() < end) {
+            src.limit(Math.min(src.position() + CHUNK, end));
+            int n = ch.write(src);
+            stats.bytesOut.addAndGet(n);
+            pace(n);
+        }
+    }
+
+    // holds the link busy for n bytes' worth of time at the configured rate
+    private void pace(int n) throws InterruptedException {
+        if (profile.bytesPerSec() <= 0) return;
+        long now = System.nanoTime();
+        linkFreeNanos = Math.max(linkFreeNanos, now) + (long) (n * 1e9 / profile.bytesPerSec());
+        sleep(Duration.ofNanos(linkFreeNanos - now));
+    }
+
+    private static void sleep(Duration d) throws InterruptedException {
+        if (d.isPositive()) Thread.sleep(d);
+    }
+}
@@ -0,0 +1,25 @@
+package org.digitNet.sim;
+
+import org.digitNet.metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** What one simulation run's fake workers observed, as seen from their side of the wire. */
+final class SimStats {
+    final LatencyHistogram dispatch = new LatencyHistogram(); // ready for work → next message arrives
+    final LatencyHistogram receive  = new LatencyHistogram(); // message arrives → shard fully read
+    final AtomicLong trained  = new AtomicLong();
+    final AtomicLong failures = new AtomicLong();
+    final AtomicLong busy     = new AtomicLong();
+    final AtomicLong bytesIn  = new AtomicLong();
+    final AtomicLong bytesOut = new AtomicLong();
+    private volatile RuntimeException error; // first worker that died of a protocol error
+
+    void error(RuntimeException e) {
+        if (error == null) error = e;
+    }
+
+    RuntimeException error() {
+        return error;
+    }
+}